@@ -1,21 +1,19 @@
 package org.fhir.uml.generation;
 
-import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.parser.IParser;
-import org.fhir.uml.generation.uml.FHIRGenerator;
-import org.fhir.uml.generation.uml.StructureDefinitionWrapper;
-import org.fhir.uml.generation.uml.elements.Element;
-import org.fhir.uml.generation.uml.elements.Legend;
+import org.fhir.uml.generation.uml.UMLGenerator;
 import org.fhir.uml.generation.uml.elements.UML;
-import org.fhir.uml.generation.uml.types.LegendPosition;
 import org.fhir.uml.generation.uml.utils.Config;
+import org.fhir.uml.generation.uml.utils.ConversionOptions;
 import org.fhir.uml.generation.uml.utils.Utils;
 import org.hl7.fhir.r4.model.StructureDefinition;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
 
 
 public class App {
@@ -23,6 +21,18 @@ public class App {
     public static void main(String[] args) throws Exception {
         config = Config.fromArgs(args);
 
+        if (config.getInputDir() != null && !config.isShowHelp()) {
+            if (config.getOutputDir() == null) {
+                printUsage();
+                return;
+            }
+            int failed = new BatchConverter(config).run();
+            if (failed > 0) {
+                System.exit(1);
+            }
+            return;
+        }
+
         if (config.isShowHelp() || config.getInputFilePath() == null || config.getOutputFilePath() == null || config.isSaveTxt() && config.getTxtOutputFilePath() == null) {
             printUsage();
             return;
@@ -38,79 +48,18 @@ public class App {
 
     private static void runUmlMode() {
         try {
-            FhirContext ctx = FhirContext.forR4();
-            IParser parser = ctx.newJsonParser();
-
-            StringBuilder jsonContent = new StringBuilder();
-            try (BufferedReader br = new BufferedReader(new FileReader(config.getInputFilePath()))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    jsonContent.append(line);
-                }
-            }
-
-            StructureDefinition structureDefinition = parser.parseResource(
-                    StructureDefinition.class,
-                    jsonContent.toString()
-            );
-
-            UML uml = new UML();
-            StructureDefinitionWrapper structureDefinitionWrapper = new StructureDefinitionWrapper(structureDefinition, uml);
-            structureDefinitionWrapper.processSnapshot();
-            structureDefinitionWrapper.processDifferential();
-
-            if (config.isDifferential()) {
-                structureDefinitionWrapper.mapDifferentialElementsWithSnapshotElements();
-                if (config.isReduceSliceClasses()) {
-                    structureDefinitionWrapper.reduceDifferentialSliceClasses();
-                }
-                structureDefinitionWrapper.generateDifferentialUMLClasses();
-            } else {
-                if (config.isReduceSliceClasses()) {
-                    structureDefinitionWrapper.reduceSnapshotSliceClasses();
+            String txtOutputFilePath = null;
+            if (config.isSaveTxt()) {
+                txtOutputFilePath = config.getTxtOutputFilePath();
+                if (txtOutputFilePath == null) {
+                    txtOutputFilePath = config.getTxtOutputFilePath().replaceAll("\\.png$", ".txt");
                 }
-                structureDefinitionWrapper.generateSnapshotUMLClasses();
             }
 
-            uml.getMainClass().setName(Element.getURLLastPath(structureDefinition.getBaseDefinition()));
-
-            structureDefinitionWrapper.generateUMLRelations();
-
-            Legend legend = new Legend();
-            legend.setXPosition(LegendPosition.XPosition.RIGHT);
-            legend.setYPosition(LegendPosition.YPosition.TOP);
-
-            legend.addGroup("StructureDefinition")
-                    .setHeader("Type", "Value")
-                    .addRow("url", "https://fhir.ee/base/StructureDefinition/ee-patient")
-                    .addRow("version", "1.1.1")
-                    .addRow("name", "EEBasePatient")
-                    .addRow("status", "Draft")
-                    .addRow("kind", "Resource")
-                    .addRow("type", "Patient")
-                    .addRow("abstract", "false")
-                    .addRow("baseDefinition", "http://hl7.org/fhir/StructureDefinition/Patient");
-
-            if (config.isShowConstraints()) {
-                Legend.LegendGroup constraintGroup = legend.addGroup("Constraints");
-                constraintGroup.setHeader("Key", "Severity", "Human");
-
-                uml.getConstraints().values().forEach(constraint -> {
-                    constraintGroup.addRow(constraint.getKey(), constraint.getSeverity(), String.format("wrap2(\"%s\", 50)", constraint.getHuman()));
-                });
-            }
-
-            uml.setLegend(legend);
-
-            Utils.generateUMLDiagram(uml, config.getOutputFilePath());
+            convertToUml(new UMLGenerator(), config.toConversionOptions(), config.getInputFilePath(), config.getOutputFilePath(), txtOutputFilePath);
             System.out.println("Processing complete. UML PNG file written to: " + config.getOutputFilePath());
 
-            if (config.isSaveTxt()) {
-                String txtOutputFilePath = config.getTxtOutputFilePath();
-                if (txtOutputFilePath == null) {
-                    txtOutputFilePath = config.getTxtOutputFilePath().replaceAll("\\.png$", ".txt");
-                }
-                Utils.saveUMLAsText(uml, txtOutputFilePath);
+            if (txtOutputFilePath != null) {
                 System.out.println("PlantUML text also written to: " + txtOutputFilePath);
             }
         } catch (Exception e) {
@@ -125,23 +74,7 @@ public class App {
                 System.out.println("Warning: --txt is not used in 'fhir' mode. Ignoring.");
             }
 
-            StringBuilder umlContent = new StringBuilder();
-            try (BufferedReader br = new BufferedReader(new FileReader(config.getInputFilePath()))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    umlContent.append(line).append("\n");
-                }
-            }
-
-            FHIRGenerator generator = new FHIRGenerator();
-            StructureDefinition structureDefinition = generator.parseUMLFile(umlContent.toString());
-            FhirContext ctx = FhirContext.forR4();
-            IParser parser = ctx.newJsonParser().setPrettyPrint(true);
-            String structureDefinitionJson = parser.encodeResourceToString(structureDefinition);
-
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(config.getOutputFilePath()))) {
-                writer.write(structureDefinitionJson);
-            }
+            convertToFhir(new UMLGenerator(), config.getInputFilePath(), config.getOutputFilePath(), config.isGzip());
             System.out.println("Transformation complete. FHIR StructureDefinition written to: " + config.getOutputFilePath());
 
         } catch (Exception e) {
@@ -150,6 +83,39 @@ public class App {
         }
     }
 
+    /**
+     * Converts one StructureDefinition file into a PNG diagram and, when {@code txtOutputPath}
+     * is not null, also saves the PlantUML text.
+     */
+    static void convertToUml(UMLGenerator generator, ConversionOptions options, String inputPath, String outputPath, String txtOutputPath) throws Exception {
+        UML uml;
+        try (Reader reader = Files.newBufferedReader(Paths.get(inputPath))) {
+            uml = generator.generate(reader, options);
+        }
+        Utils.generateUMLDiagram(uml, outputPath);
+
+        if (txtOutputPath != null) {
+            Utils.saveUMLAsText(uml, txtOutputPath);
+        }
+    }
+
+    /**
+     * Converts one PlantUML text file into a StructureDefinition (JSON).
+     * The input is parsed before the output file is opened, so a malformed diagram leaves
+     * an existing output untouched instead of truncating it.
+     */
+    static void convertToFhir(UMLGenerator generator, String inputPath, String outputPath, boolean gzip) throws Exception {
+        UMLGenerator.ParsedStructureDefinition structureDefinition;
+        try (Reader reader = Files.newBufferedReader(Paths.get(inputPath))) {
+            structureDefinition = generator.parseStructureDefinition(reader);
+        }
+
+        try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(Paths.get(outputPath)));
+             OutputStream out = gzip ? new GZIPOutputStream(file) : file) {
+            structureDefinition.writeTo(out, true);
+        }
+    }
+
     private static StructureDefinition createStructureDefinitionFromUml(String umlText) {
         // TODO: Implement UML -> StructureDefinition converter
         StructureDefinition sd = new StructureDefinition();
@@ -171,8 +137,18 @@ public class App {
         System.out.println("       [--show_bindings <true|false>] \\");
         System.out.println("       [--reduce_slice_classes <true|false>] \\");
         System.out.println("       [--hide_legend <true|false>] \\");
+        System.out.println("       [--parallel_build <true|false>] \\");
+        System.out.println("       [--fast_parse <true|false>] \\");
+        System.out.println("       [--gzip <true|false>] \\");
         System.out.println("       [--help]");
         System.out.println();
+        System.out.println("  java -jar fhir-uml-generation.jar \\");
+        System.out.println("       --input_dir <input_directory> \\");
+        System.out.println("       --output_dir <output_directory> \\");
+        System.out.println("       [--glob <pattern>] \\");
+        System.out.println("       [--parallelism <threads>] \\");
+        System.out.println("       [other options as above]");
+        System.out.println();
         System.out.println("Modes:");
         System.out.println("  uml (default): Transform FHIR StructureDefinition -> UML diagram (PNG + optionally PlantUML .txt)");
         System.out.println("    --input       Path to input FHIR StructureDefinition (JSON)");
@@ -183,6 +159,13 @@ public class App {
         System.out.println("    --input       Path to UML in PlantUML text format (.txt)");
         System.out.println("    --output      Output FHIR StructureDefinition (usually .json)");
         System.out.println("    --txt         (ignored in this mode)");
+        System.out.println("    --gzip        Gzip-compress the JSON output (default: false)");
+        System.out.println();
+        System.out.println("Batch mode (instead of --input/--output):");
+        System.out.println("  --input_dir <dir>                    Convert every file in <dir> that matches --glob");
+        System.out.println("  --output_dir <dir>                   Where to write the results; sub-directories of the input are kept");
+        System.out.println("  --glob <pattern>                     File pattern relative to --input_dir (default: *.json in uml mode, *.txt in fhir mode)");
+        System.out.println("  --parallelism <threads>              Number of files converted at the same time (default: number of CPU cores)");
         System.out.println();
         System.out.println("Options:");
         System.out.println("  --view <snapshot|differential>       What elements need to generate from StructureDefinition. View mode used in UML generation (default: snapshot)");
@@ -191,6 +174,8 @@ public class App {
         System.out.println("  --show_bindings <true|false>         Show value set bindings (default: true)");
         System.out.println("  --reduce_slice_classes <true|false>  Simplify representation of slices into fewer UML classes (default: false)");
         System.out.println("  --hide_legend <true|false>           Hide the legend/notes section in UML output (default: false)");
+        System.out.println("  --parallel_build <true|false>        Build large StructureDefinitions (128+ elements) on all CPU cores; the output is unchanged (default: false)");
+        System.out.println("  --fast_parse <true|false>            Read only the fields the diagram needs from the JSON, falling back to the full parser when needed (default: false)");
         System.out.println("  --help                               Show this help message and exit");
     }
 
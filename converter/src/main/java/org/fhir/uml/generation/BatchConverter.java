@@ -0,0 +1,118 @@
+package org.fhir.uml.generation;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.fhir.uml.generation.uml.UMLGenerator;
+import org.fhir.uml.generation.uml.utils.Config;
+import org.fhir.uml.generation.uml.utils.ConversionOptions;
+import org.fhir.uml.generation.uml.utils.FhirContextHolder;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Converts every file of a directory that matches a glob pattern.
+ * <p>
+ * All files share the process-wide {@link FhirContext} of {@link FhirContextHolder}, so model
+ * scanning is paid once per run instead of once per file. Files are converted concurrently on a work-stealing pool,
+ * and a failing file is reported without stopping the rest of the batch.
+ */
+public class BatchConverter {
+
+    private final Config config;
+
+    public BatchConverter(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * Runs the batch and prints a line per file plus a summary.
+     *
+     * @return the number of files that failed
+     */
+    public int run() throws IOException {
+        Path inputDir = Paths.get(config.getInputDir());
+        Path outputDir = Paths.get(config.getOutputDir());
+        List<Path> inputs = findInputs(inputDir, config.getGlob());
+
+        if (inputs.isEmpty()) {
+            System.out.println("No files matching '" + config.getGlob() + "' found in " + inputDir);
+            return 0;
+        }
+
+        boolean fhirMode = config.getMode().equalsIgnoreCase("fhir");
+        if (fhirMode && config.isSaveTxt()) {
+            System.out.println("Warning: --txt is not used in 'fhir' mode. Ignoring.");
+        }
+
+        UMLGenerator generator = new UMLGenerator();
+        ConversionOptions options = config.toConversionOptions();
+
+        ForkJoinPool pool = new ForkJoinPool(config.getParallelism());
+        try {
+            List<ForkJoinTask<String>> tasks = new ArrayList<>(inputs.size());
+            for (Path input : inputs) {
+                Path relative = inputDir.relativize(input);
+                tasks.add(pool.submit(() -> {
+                    if (fhirMode) {
+                        Path output = resolveOutput(outputDir, relative, config.isGzip() ? ".json.gz" : ".json");
+                        App.convertToFhir(generator, input.toString(), output.toString(), config.isGzip());
+                    } else {
+                        Path output = resolveOutput(outputDir, relative, ".png");
+                        Path txtOutput = config.isSaveTxt() ? resolveOutput(outputDir, relative, ".txt") : null;
+                        App.convertToUml(generator, options, input.toString(), output.toString(),
+                                txtOutput == null ? null : txtOutput.toString());
+                    }
+                    return relative.toString();
+                }));
+            }
+
+            int failed = 0;
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    System.out.println("OK      " + tasks.get(i).join());
+                } catch (RuntimeException e) {
+                    failed++;
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    System.err.println("FAILED  " + inputDir.relativize(inputs.get(i)) + ": " + cause.getMessage());
+                }
+            }
+
+            System.out.println("Batch complete. " + (inputs.size() - failed) + " of " + inputs.size()
+                    + " files converted, output written to: " + outputDir);
+            return failed;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static List<Path> findInputs(Path inputDir, String glob) throws IOException {
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        try (Stream<Path> files = Files.walk(inputDir)) {
+            return files
+                    .filter(Files::isRegularFile)
+                    .filter(path -> matcher.matches(inputDir.relativize(path)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static Path resolveOutput(Path outputDir, Path relative, String extension) throws IOException {
+        String fileName = relative.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        String baseName = dot > 0 ? fileName.substring(0, dot) : fileName;
+
+        Path output = outputDir.resolve(relative).resolveSibling(baseName + extension);
+        Files.createDirectories(output.getParent());
+        return output;
+    }
+}
@@ -8,6 +8,11 @@ import org.fhir.uml.generation.uml.types.RelationShipType;
 import org.hl7.fhir.r4.model.ElementDefinition;
 import org.hl7.fhir.r4.model.StructureDefinition;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -22,31 +27,32 @@ public class FHIRGenerator {
     // -------------------------------------------------------------------------
     // Regex Patterns
     // -------------------------------------------------------------------------
-    private static final Pattern CLASS_PATTERN = Pattern.compile(
-            "(?sm)(class|struct)\\s+\"([^\"]+)\"\\s*(<<.*?>>)?\\s*\\{([\\s\\S]*?)(?=^[}]\\s*$)",
-            Pattern.MULTILINE
+    // All patterns are applied to a single line, and each line is tried against at most
+    // one of the body patterns, picked by its first non-blank character.
+    private static final Pattern CLASS_HEADER_PATTERN = Pattern.compile(
+            "(class|struct)\\s+\"([^\"]+)\"\\s*(<<.*?>>)?\\s*\\{(.*)$"
     );
 
     private static final Pattern FIELD_PATTERN = Pattern.compile(
-            "(?m)^\\s*\\{([^}]*)}\\s+([+\\-~#])\\s+([^:\\s]+)\\s*:\\s*([^\\[=\\n]+)" +
+            "^\\s*\\{([^}]*)}\\s+([+\\-~#])\\s+([^:\\s]+)\\s*:\\s*([^\\[=\\n]+)" +
                     "(?:\\s*=\\s*\\*\\*([^*]+)\\*\\*)?" +
                     "(?:\\s*\\[([^]]*)])?" +
                     "(?:\\s*<<([^>]+)>>)?\\s*$"
     );
 
     private static final Pattern BINDING_PATTERN = Pattern.compile(
-            "(?m)^\\s*\\*\\*Binding\\*\\*:\\s*([^{]+)\\{([^}]+)}:\\s*//(.*?)//\\s*$"
+            "^\\s*\\*\\*Binding\\*\\*:\\s*([^{]+)\\{([^}]+)}:\\s*//(.*?)//\\s*$"
     );
 
     private static final Pattern RELATION_PATTERN = Pattern.compile(
-            "(?m)^\"([^\"]+)\"\\s*(--\\S+)\\s*\"([^\"]+)\"\\s*\"([^\"]+)\"\\s*:\\s*\\*\\*([^*]+)\\*\\*\\s*$"
+            "^\"([^\"]+)\"\\s*(--\\S+)\\s*\"([^\"]+)\"\\s*\"([^\"]+)\"\\s*:\\s*\\*\\*([^*]+)\\*\\*\\s*$"
     );
 
     private static final Pattern CLASS_NAME_PATTERN = Pattern.compile(
             "^([^\"]+)\\s*\\(([^)]+)\\)$"
     );
 
-    private static final Pattern CLASS_GROUP_PATTERN = Pattern.compile("(?m)^\\s*--(.*?)--\\s*$");
+    private static final Pattern CLASS_GROUP_PATTERN = Pattern.compile("^\\s*--(.*?)--\\s*$");
 
     // -------------------------------------------------------------------------
     // Public API
@@ -59,157 +65,288 @@ public class FHIRGenerator {
      * @return a generated StructureDefinition
      */
     public StructureDefinition parseUMLFile(String umlContent) {
-        UML uml = new UML();
+        try {
+            return parseUMLFile(new StringReader(umlContent));
+        } catch (IOException e) {
+            // A StringReader never fails
+            throw new UncheckedIOException(e);
+        }
+    }
 
-        // Parse classes (and their fields)
-        parseClasses(umlContent, uml);
+    /**
+     * Parses the UML-like text line by line and builds a FHIR StructureDefinition.
+     * The input is read once; classes, fields, groups, bindings and relations are
+     * recognised in the same sweep.
+     *
+     * @param umlContent the UML text (PlantUML-style) to parse
+     * @return a generated StructureDefinition
+     */
+    public StructureDefinition parseUMLFile(Reader umlContent) throws IOException {
+        List<ClassBlock> blocks = new ArrayList<>();
+        List<String> relationCandidates = new ArrayList<>();
 
-        // Parse relations
-        parseRelations(umlContent, uml);
+        // Split the text into class blocks and relation lines
+        scan(umlContent, blocks, relationCandidates);
 
-        // Post-process UML to finalize IDs/paths, etc.
-        postProcessUML(uml);
+        // Parse classes (and their fields) and relations
+        List<ParsedClass> classes = new ArrayList<>(blocks.size());
+        for (ClassBlock block : blocks) {
+            classes.add(parseClassBlock(block));
+        }
+        List<RelationLine> relationLines = new ArrayList<>();
+        for (String candidate : relationCandidates) {
+            RelationLine relationLine = parseRelationLine(candidate);
+            if (relationLine != null) {
+                relationLines.add(relationLine);
+            }
+        }
 
         // Convert the UML model into a StructureDefinition
-        return buildStructureDefinition(uml);
+        return buildStructureDefinition(buildUML(classes, relationLines));
+    }
+
+    /**
+     * Builds and links a fresh UML model from parsed classes and relations.
+     * Parsed classes are never modified, so they can be reused for the next version of a document.
+     */
+    UML buildUML(List<ParsedClass> classes, List<RelationLine> relationLines) {
+        return buildUML(classes, relationLines, null);
+    }
+
+    /**
+     * Same as {@link #buildUML(List, List)}; when {@code linkedRelations} is not null, it also
+     * records how each relation was resolved, in relation order.
+     */
+    UML buildUML(List<ParsedClass> classes, List<RelationLine> relationLines, List<LinkedRelation> linkedRelations) {
+        UML uml = new UML();
+        boolean firstClass = true;
+        for (ParsedClass parsedClass : classes) {
+            uml.addClass(toUMLClass(parsedClass, firstClass));
+            firstClass = false;
+        }
+
+        // Relations may point at classes declared further down, so they are linked afterwards
+        parseRelations(relationLines, uml, linkedRelations);
+
+        // Post-process UML to finalize IDs/paths, etc.
+        postProcessUML(uml);
+        return uml;
     }
 
     // -------------------------------------------------------------------------
     // Step 1: Parse Classes
     // -------------------------------------------------------------------------
-    private void parseClasses(String umlContent, UML uml) {
-        Matcher classMatcher = CLASS_PATTERN.matcher(umlContent);
-        boolean firstClass = true;
 
-        while (classMatcher.find()) {
-            String umlClassName = classMatcher.group(2);
-            String customClassType = classMatcher.group(3);
-            String umlClassBody = classMatcher.group(4);
-
-            String parsedFhirClassName;
-            String parsedFhirClassType = "";
-            Matcher classNameMatcher = CLASS_NAME_PATTERN.matcher(umlClassName);
-            if (classNameMatcher.find()) {
-                parsedFhirClassType = classNameMatcher.group(1);
-                parsedFhirClassName = classNameMatcher.group(2);
-            } else {
-                parsedFhirClassName = umlClassName;
+    /**
+     * Walks the input once. Outside a class a line may open a class; inside a class every
+     * line up to a closing "}" at the start of a line is part of the class body.
+     * Lines that may be relations are collected anywhere. A class without a closing line is dropped.
+     */
+    void scan(Reader umlContent, List<ClassBlock> blocks, List<String> relationCandidates) throws IOException {
+        BufferedReader reader = umlContent instanceof BufferedReader
+                ? (BufferedReader) umlContent
+                : new BufferedReader(umlContent);
+
+        ClassBlock currentBlock = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("\"")) {
+                relationCandidates.add(line);
             }
 
-            UMLClass umlClass = new UMLClass(parsedFhirClassType, parsedFhirClassName, null, null, false);;
-
-            if (customClassType != null) {
-                umlClass.setCustomClassType(CustomClassType.fromUmlString(customClassType));
+            if (currentBlock != null) {
+                if (isClassEnd(line)) {
+                    blocks.add(currentBlock);
+                    currentBlock = null;
+                } else {
+                    currentBlock.addBodyLine(line);
+                }
+                continue;
             }
 
-            if (firstClass) {
-                umlClass.setMainClass(true);
-                Element mainElement = new Builder()
-                        .id(parsedFhirClassName)
-                        .isMain(true)
-                        .name(parsedFhirClassName)
-                        .type(parsedFhirClassType.strip())
-                        .cardinality(new Cardinality("0","*")).build();
-                umlClass.addElement(mainElement);
-                umlClass.setMainElement(mainElement);
-                firstClass = false;
-            }
+            currentBlock = openClassBlock(line);
+        }
+    }
 
-            parseClassBody(umlClassBody, umlClass);
+    /**
+     * Returns a new class block if the line is a class header, otherwise {@code null}.
+     */
+    ClassBlock openClassBlock(String line) {
+        if (!line.contains("class") && !line.contains("struct")) {
+            return null;
+        }
+        Matcher headerMatcher = CLASS_HEADER_PATTERN.matcher(line);
+        return headerMatcher.find() ? new ClassBlock(headerMatcher) : null;
+    }
 
-            uml.addClass(umlClass);
+    ParsedClass parseClassBlock(ClassBlock block) {
+        List<FieldLine> fields = new ArrayList<>();
+        boolean nextElementsAreSlices = false;
+        for (String line : block.bodyLines) {
+            nextElementsAreSlices = parseClassBodyLine(line, fields, nextElementsAreSlices);
         }
+        return new ParsedClass(block.umlClassName, block.customClassType, fields);
     }
 
     /**
-     * Helper to parse the lines within a UML class body
-     * and populate the given UMLClass with elements, etc.
+     * Parses one line of a UML class body and adds the field it declares, if any.
+     *
+     * @return whether the following elements are slices
      */
-    private void parseClassBody(String classBody, UMLClass umlClass) {
-        String[] lines = classBody.split("\\r?\\n");
-        boolean nextElementsAreSlices = false;
+    private boolean parseClassBodyLine(String line, List<FieldLine> fields, boolean nextElementsAreSlices) {
+        int start = 0;
+        while (start < line.length() && isRegexWhitespace(line.charAt(start))) {
+            start++;
+        }
+        if (start == line.length()) {
+            return nextElementsAreSlices;
+        }
 
-        for (String line : lines) {
-            Matcher fieldMatcher = FIELD_PATTERN.matcher(line);
-            Matcher bindingMatcher = BINDING_PATTERN.matcher(line);
-            Matcher groupMatcher = CLASS_GROUP_PATTERN.matcher(line);
+        switch (line.charAt(start)) {
+            // Field lines
+            case '{' -> {
+                Matcher fieldMatcher = FIELD_PATTERN.matcher(line);
+                if (fieldMatcher.matches()) {
+                    fields.add(new FieldLine(fieldMatcher, nextElementsAreSlices));
+                }
+            }
+            // Binding lines (TODO: parse as needed)
+            case '*' -> {
+                Matcher bindingMatcher = BINDING_PATTERN.matcher(line);
+                if (bindingMatcher.matches()) {
+                    // e.g. "**Binding**: SomeBinding{CodeSystem}://SomeDefinition//"
+                    // Expand as needed.
+                }
+            }
+            // Groups (e.g. "--Slices--")
+            case '-' -> {
+                Matcher groupMatcher = CLASS_GROUP_PATTERN.matcher(line);
+                if (groupMatcher.matches() && "Slices".equals(groupMatcher.group(1))) {
+                    return true;
+                }
+            }
+            default -> {
+            }
+        }
+        return nextElementsAreSlices;
+    }
 
-            // Check for field lines
-            if (fieldMatcher.matches()) {
-                String fieldVisibility = fieldMatcher.group(2);
-                String fieldName = fieldMatcher.group(3);
-                String fieldType = fieldMatcher.group(4);
-                String fieldFixedValue = fieldMatcher.group(5);
-                String fieldCardinality = fieldMatcher.group(6);
+    private UMLClass toUMLClass(ParsedClass parsedClass, boolean firstClass) {
+        String parsedFhirClassName;
+        String parsedFhirClassType = "";
+        Matcher classNameMatcher = CLASS_NAME_PATTERN.matcher(parsedClass.umlClassName);
+        if (classNameMatcher.find()) {
+            parsedFhirClassType = classNameMatcher.group(1);
+            parsedFhirClassName = classNameMatcher.group(2);
+        } else {
+            parsedFhirClassName = parsedClass.umlClassName;
+        }
 
-                // Build up the element
-                Element.Builder elementBuilder = new Builder();
+        UMLClass umlClass = new UMLClass(parsedFhirClassType, parsedFhirClassName, null, null, false);
 
-                if (fieldFixedValue != null && !fieldFixedValue.isBlank()) {
-                    elementBuilder.fixedValue(fieldFixedValue).hasFixedValue(true);
-                }
+        if (parsedClass.customClassType != null) {
+            umlClass.setCustomClassType(CustomClassType.fromUmlString(parsedClass.customClassType));
+        }
 
-                if (fieldCardinality != null && !fieldCardinality.isBlank()) {
-                    elementBuilder.cardinality(new Cardinality(fieldCardinality));
-                } else {
-                    // If no cardinality, it might be a choice element
-                    elementBuilder.choiceOfTypeElement(true);
-                }
+        if (firstClass) {
+            umlClass.setMainClass(true);
+            Element mainElement = new Builder()
+                    .id(parsedFhirClassName)
+                    .isMain(true)
+                    .name(parsedFhirClassName)
+                    .type(parsedFhirClassType.strip())
+                    .cardinality(new Cardinality("0","*")).build();
+            umlClass.addElement(mainElement);
+            umlClass.setMainElement(mainElement);
+        }
 
-                elementBuilder
-                        .type(fieldType != null ? fieldType.strip() : null)
-                        .name(fieldName)
-                        .visibility(ElementVisability.fromSymbol(fieldVisibility))
-                        .hasSliceName(nextElementsAreSlices);
+        for (FieldLine field : parsedClass.fields) {
+            umlClass.addElement(toElement(field));
+        }
 
-                Element element = elementBuilder.build();
-                umlClass.addElement(element);
-            }
-            // Check for binding lines (TODO: parse as needed)
-            else if (bindingMatcher.matches()) {
-                // e.g. "**Binding**: SomeBinding{CodeSystem}://SomeDefinition//"
-                // Expand as needed.
-            }
-            // Check for groups (e.g. "--Slices--")
-            else if (groupMatcher.matches()) {
-                if ("Slices".equals(groupMatcher.group(1))) {
-                    nextElementsAreSlices = true;
-                }
+        return umlClass;
+    }
+
+    Element toElement(FieldLine field) {
+        // Build up the element
+        Element.Builder elementBuilder = new Builder();
+
+        if (field.fixedValue != null && !field.fixedValue.isBlank()) {
+            elementBuilder.fixedValue(field.fixedValue).hasFixedValue(true);
+        }
+
+        if (field.cardinality != null && !field.cardinality.isBlank()) {
+            elementBuilder.cardinality(new Cardinality(field.cardinality));
+        } else {
+            // If no cardinality, it might be a choice element
+            elementBuilder.choiceOfTypeElement(true);
+        }
+
+        return elementBuilder
+                .type(field.type != null ? field.type.strip() : null)
+                .name(field.name)
+                .visibility(ElementVisability.fromSymbol(field.visibility))
+                .hasSliceName(field.isSlice)
+                .build();
+    }
+
+    /**
+     * A class body ends at a line that holds only "}" (plus trailing whitespace) in the first column.
+     */
+    static boolean isClassEnd(String line) {
+        if (line.isEmpty() || line.charAt(0) != '}') {
+            return false;
+        }
+        for (int i = 1; i < line.length(); i++) {
+            if (!isRegexWhitespace(line.charAt(i))) {
+                return false;
             }
         }
+        return true;
+    }
+
+    // Same characters as \s in java.util.regex
+    private static boolean isRegexWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
     }
 
     // -------------------------------------------------------------------------
     // Step 2: Parse Relations
     // -------------------------------------------------------------------------
-    private void parseRelations(String umlContent, UML uml) {
-        Matcher relationMatcher = RELATION_PATTERN.matcher(umlContent);
-        while (relationMatcher.find()) {
-            String relationFrom = relationMatcher.group(1);
-            String arrowType = relationMatcher.group(2);
-            String relationCardinality = relationMatcher.group(3);
-            String relationTo = relationMatcher.group(4);
-            String relationFromElementName = relationMatcher.group(5);
-
-            UMLClass fromClass = uml.findClassByTitle(relationFrom);
-            UMLClass toClass = uml.findClassByTitle(relationTo);
+
+    /**
+     * Returns the parsed relation, or {@code null} if the line is not a relation.
+     */
+    RelationLine parseRelationLine(String line) {
+        Matcher relationMatcher = RELATION_PATTERN.matcher(line);
+        return relationMatcher.matches() ? new RelationLine(relationMatcher) : null;
+    }
+
+    private void parseRelations(List<RelationLine> relationLines, UML uml, List<LinkedRelation> linkedRelations) {
+        for (RelationLine relationLine : relationLines) {
+            UMLClass fromClass = uml.findClassByTitle(relationLine.from);
+            UMLClass toClass = uml.findClassByTitle(relationLine.to);
 
             // Build the Relation
             Relation.Builder relationBuilder = new Relation.Builder()
                     .from(fromClass)
                     .to(toClass)
-                    .type(RelationShipType.fromArrow(arrowType))
-                    .relationLabel(relationFromElementName)
-                    .cardinality(new Cardinality(relationCardinality));
+                    .type(RelationShipType.fromArrow(relationLine.arrowType))
+                    .relationLabel(relationLine.fromElementName)
+                    .cardinality(new Cardinality(relationLine.cardinality));
 
             Relation relation = relationBuilder.build();
             uml.addRelation(relation);
 
             // Handle slice if "Slices for ...", etc.
-            Element parentElement = fromClass.findElementByName(relationFromElementName);
-            if (parentElement != null && toClass.getTitle().contains("Slices for")) {
+            Element parentElement = fromClass.findElementByName(relationLine.fromElementName);
+            boolean slicesTarget = parentElement != null && toClass.getTitle().contains("Slices for");
+            if (slicesTarget) {
                 parentElement.setSliceHeader(true);
             }
+            if (linkedRelations != null) {
+                linkedRelations.add(new LinkedRelation(relationLine, fromClass, toClass, parentElement != null, slicesTarget));
+            }
 
             // Set main element references
             toClass.setMainElement(parentElement);
@@ -229,42 +366,53 @@ public class FHIRGenerator {
             return;
         }
 
-        Element mainElement = mainClass.getMainElement();
-
         // Update IDs/paths for elements in the main class
+        assignMainClassIds(mainClass);
+
+        // For each relation, update the child class's elements
+        uml.getRelations().forEach(r -> {
+            Element parentElement = r.getFrom().findElementByName(r.getRelationLabel());
+            if (parentElement != null) {
+                assignChildIds(parentElement, r.getTo());
+            }
+        });
+    }
+
+    void assignMainClassIds(UMLClass mainClass) {
+        Element mainElement = mainClass.getMainElement();
         mainClass.getElements().forEach(e -> {
             if (!e.isMain()) {
                 e.setId(String.format("%s.%s", mainElement.getElementId(), e.getName()));
                 e.setPath(e.getElementId());
             }
         });
+    }
 
-        // For each relation, update the child class's elements
-        uml.getRelations().forEach(r -> {
-            UMLClass fromClass = r.getFrom();
-            UMLClass toClass = r.getTo();
-            Element parentElement = fromClass.findElementByName(r.getRelationLabel());
-            if (parentElement == null) {
-                return;
-            }
-
-            toClass.getElements().forEach(e -> {
-                e.setId(String.format("%s.%s", parentElement.getElementId(), e.getName()));
-                e.setPath(e.getElementId());
+    void assignChildIds(Element parentElement, UMLClass toClass) {
+        toClass.getElements().forEach(e -> {
+            e.setId(String.format("%s.%s", parentElement.getElementId(), e.getName()));
+            e.setPath(e.getElementId());
 
-                if (e.getHasSliceName()) {
-                    // Example: "parentId:fieldName"
-                    e.setId(String.format("%s:%s", parentElement.getElementId(), e.getName()));
-                    e.setPath(parentElement.getPath());
-                }
-            });
+            if (e.getHasSliceName()) {
+                // Example: "parentId:fieldName"
+                e.setId(String.format("%s:%s", parentElement.getElementId(), e.getName()));
+                e.setPath(parentElement.getPath());
+            }
         });
     }
 
     // -------------------------------------------------------------------------
     // Step 4: Build the final StructureDefinition
     // -------------------------------------------------------------------------
-    private StructureDefinition buildStructureDefinition(UML uml) {
+    StructureDefinition buildStructureDefinition(UML uml) {
+        List<ElementDefinition> snapshotElements = new ArrayList<>();
+        for (UMLClass c : uml.getClasses()) {
+            snapshotElements.addAll(toElementDefinitions(c));
+        }
+        return newStructureDefinition(snapshotElements);
+    }
+
+    StructureDefinition newStructureDefinition(List<ElementDefinition> snapshotElements) {
         // Construct a new StructureDefinition
         StructureDefinition sd = new StructureDefinition();
         sd.setName("Test"); // Example name; set as needed
@@ -272,43 +420,145 @@ public class FHIRGenerator {
         // Prepare the snapshot component
         StructureDefinition.StructureDefinitionSnapshotComponent snapshot =
                 new StructureDefinition.StructureDefinitionSnapshotComponent();
-        List<ElementDefinition> snapshotElements = new ArrayList<>();
+        snapshot.setElement(snapshotElements);
+        sd.setSnapshot(snapshot);
 
-        // Convert each UML element into an ElementDefinition
-        for (UMLClass c : uml.getClasses()) {
-            for (Element e : c.getElements()) {
-                ElementDefinition elementDefinition = new ElementDefinition();
-
-                elementDefinition.setId(e.getElementId());
-                elementDefinition.setPath(e.getPath());
-
-                // If cardinalities are present, set them
-                if (e.getCardinality() != null) {
-                    try {
-                        elementDefinition.setMin(
-                                Integer.parseInt(e.getCardinality().getMin())
-                        );
-                        elementDefinition.setMax(e.getCardinality().getMax());
-                    } catch (NumberFormatException ex) {
-                        // handle or log error if min is not a number
-                    }
-                }
+        return sd;
+    }
 
-                // Set type
-                if (e.getType() != null) {
-                    ElementDefinition.TypeRefComponent elementType =
-                            new ElementDefinition.TypeRefComponent();
-                    elementType.setCode(e.getType());
-                    elementDefinition.setType(List.of(elementType));
+    /**
+     * Converts each UML element of the class into an ElementDefinition.
+     */
+    List<ElementDefinition> toElementDefinitions(UMLClass c) {
+        List<ElementDefinition> elementDefinitions = new ArrayList<>(c.getElements().size());
+        for (Element e : c.getElements()) {
+            ElementDefinition elementDefinition = new ElementDefinition();
+
+            elementDefinition.setId(e.getElementId());
+            elementDefinition.setPath(e.getPath());
+
+            // If cardinalities are present, set them
+            if (e.getCardinality() != null) {
+                try {
+                    elementDefinition.setMin(
+                            Integer.parseInt(e.getCardinality().getMin())
+                    );
+                    elementDefinition.setMax(e.getCardinality().getMax());
+                } catch (NumberFormatException ex) {
+                    // handle or log error if min is not a number
                 }
+            }
 
-                snapshotElements.add(elementDefinition);
+            // Set type
+            if (e.getType() != null) {
+                ElementDefinition.TypeRefComponent elementType =
+                        new ElementDefinition.TypeRefComponent();
+                elementType.setCode(e.getType());
+                elementDefinition.setType(List.of(elementType));
             }
+
+            elementDefinitions.add(elementDefinition);
         }
+        return elementDefinitions;
+    }
 
-        snapshot.setElement(snapshotElements);
-        sd.setSnapshot(snapshot);
+    // -------------------------------------------------------------------------
+    // Intermediate results
+    // -------------------------------------------------------------------------
 
-        return sd;
+    /**
+     * The source lines of one class declaration, from the header up to (not including) the closing brace.
+     */
+    static final class ClassBlock {
+        final String umlClassName;
+        final String customClassType;
+        final List<String> bodyLines = new ArrayList<>();
+
+        ClassBlock(Matcher headerMatcher) {
+            this.umlClassName = headerMatcher.group(2);
+            this.customClassType = headerMatcher.group(3);
+
+            // The body starts right after the opening brace
+            String rest = headerMatcher.group(4);
+            if (!rest.isEmpty()) {
+                bodyLines.add(rest);
+            }
+        }
+
+        void addBodyLine(String line) {
+            bodyLines.add(line);
+        }
+    }
+
+    /**
+     * A parsed class declaration. Immutable, so one instance can back any number of UML models.
+     */
+    static final class ParsedClass {
+        final String umlClassName;
+        final String customClassType;
+        final List<FieldLine> fields;
+
+        ParsedClass(String umlClassName, String customClassType, List<FieldLine> fields) {
+            this.umlClassName = umlClassName;
+            this.customClassType = customClassType;
+            this.fields = List.copyOf(fields);
+        }
+    }
+
+    static final class FieldLine {
+        final String visibility;
+        final String name;
+        final String type;
+        final String fixedValue;
+        final String cardinality;
+        final boolean isSlice;
+
+        FieldLine(Matcher fieldMatcher, boolean isSlice) {
+            this.visibility = fieldMatcher.group(2);
+            this.name = fieldMatcher.group(3);
+            this.type = fieldMatcher.group(4);
+            this.fixedValue = fieldMatcher.group(5);
+            this.cardinality = fieldMatcher.group(6);
+            this.isSlice = isSlice;
+        }
+    }
+
+    /**
+     * The parts of a relation line, kept until all classes are known.
+     */
+    static final class RelationLine {
+        final String from;
+        final String arrowType;
+        final String cardinality;
+        final String to;
+        final String fromElementName;
+
+        RelationLine(Matcher relationMatcher) {
+            this.from = relationMatcher.group(1);
+            this.arrowType = relationMatcher.group(2);
+            this.cardinality = relationMatcher.group(3);
+            this.to = relationMatcher.group(4);
+            this.fromElementName = relationMatcher.group(5);
+        }
+    }
+
+    /**
+     * How one relation was resolved while linking: the classes it connected at that point, whether
+     * the source class had the labelled element, and whether that element became a slice header.
+     */
+    static final class LinkedRelation {
+        final RelationLine line;
+        final UMLClass from;
+        final UMLClass to;
+        final boolean parentFound;
+        final boolean slicesTarget;
+
+        LinkedRelation(RelationLine line, UMLClass from, UMLClass to, boolean parentFound, boolean slicesTarget) {
+            this.line = line;
+            this.from = from;
+            this.to = to;
+            this.parentFound = parentFound;
+            this.slicesTarget = slicesTarget;
+        }
     }
 }
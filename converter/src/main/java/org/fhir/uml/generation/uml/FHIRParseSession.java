@@ -0,0 +1,602 @@
+package org.fhir.uml.generation.uml;
+
+import org.fhir.uml.generation.uml.FHIRGenerator.ClassBlock;
+import org.fhir.uml.generation.uml.FHIRGenerator.FieldLine;
+import org.fhir.uml.generation.uml.FHIRGenerator.LinkedRelation;
+import org.fhir.uml.generation.uml.FHIRGenerator.ParsedClass;
+import org.fhir.uml.generation.uml.FHIRGenerator.RelationLine;
+import org.fhir.uml.generation.uml.elements.Element;
+import org.fhir.uml.generation.uml.elements.UML;
+import org.fhir.uml.generation.uml.elements.UMLClass;
+import org.hl7.fhir.r4.model.ElementDefinition;
+import org.hl7.fhir.r4.model.StructureDefinition;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * UML → FHIR parsing session for an editor that re-submits the whole PlantUML text after every edit.
+ * <p>
+ * The document is kept as a list of chunks: a class block from its header to its closing brace, or
+ * a single line outside of classes. An update compares the new text with the previous one, scans
+ * only the chunks around the edited range and parses only the chunks that changed.
+ * <p>
+ * The linked UML model is kept as well. When an edit only changes the bodies of existing classes and
+ * every relation still finds (or misses) its labelled element, titles and relation targets are
+ * unchanged, so the edited classes are rebuilt in place. Element ids are then recomputed for them and
+ * for child classes whose parent element id or path changed. Any other edit, such as a new class, a
+ * changed relation line or a renamed header, links the model again from the cached parse results.
+ * Each class keeps its element definitions, so the StructureDefinition reuses those of untouched classes.
+ * <p>
+ * What still grows with the document is the character comparison with the previous text and the copy
+ * of the final element list.
+ * <p>
+ * {@link #getUML()} returns a model that later updates change in place, and StructureDefinitions of
+ * consecutive updates share the element definitions of unchanged classes, so both are read-only.
+ * A session belongs to one document and is not thread-safe.
+ */
+public class FHIRParseSession {
+
+    private final FHIRGenerator generator = new FHIRGenerator();
+
+    private String text = "";
+    private final List<Chunk> chunks = new ArrayList<>();
+
+    private UML uml;
+    private Chunk mainChunk;
+    // Whether the model matches the chunks, and whether edits to class bodies may be patched into it
+    private boolean linked;
+    private boolean patchable;
+
+    private int reparsedCount;
+    private int relinkedCount;
+
+    /**
+     * Applies the new version of the document and returns the StructureDefinition built from it.
+     */
+    public StructureDefinition update(String umlContent) {
+        String previous = text;
+        int oldLength = previous.length();
+        int newLength = umlContent.length();
+
+        // Common prefix and suffix of both versions; everything in between was edited
+        int limit = Math.min(oldLength, newLength);
+        int prefix = 0;
+        while (prefix < limit && previous.charAt(prefix) == umlContent.charAt(prefix)) {
+            prefix++;
+        }
+        if (prefix == oldLength && prefix == newLength) {
+            reparsedCount = 0;
+            relinkedCount = 0;
+            if (!linked) {
+                relink();
+            }
+            return assemble();
+        }
+        int suffix = 0;
+        while (suffix < limit - prefix
+                && previous.charAt(oldLength - 1 - suffix) == umlContent.charAt(newLength - 1 - suffix)) {
+            suffix++;
+        }
+
+        // Scanning restarts at the chunk holding the character before the edit, as the edit may join its line with the next
+        int first = 0;
+        int start = 0;
+        while (prefix > 0 && start + chunks.get(first).length < prefix) {
+            start += chunks.get(first).length;
+            first++;
+        }
+
+        // Scan until the new text is back on a chunk boundary of the previous version, past the edit
+        int delta = newLength - oldLength;
+        int editEnd = newLength - suffix;
+        int last = first;
+        int oldPosition = start;
+        int position = start;
+        List<Chunk> scanned = new ArrayList<>();
+        while (position < newLength) {
+            if (position >= editEnd) {
+                int target = position - delta;
+                while (oldPosition < target) {
+                    oldPosition += chunks.get(last).length;
+                    last++;
+                }
+                if (oldPosition == target) {
+                    break;
+                }
+            }
+            Chunk chunk = scanChunk(umlContent, position);
+            scanned.add(chunk);
+            position += chunk.length;
+        }
+        int oldEnd = oldPosition;
+        if (position == newLength) {
+            last = chunks.size();
+            oldEnd = oldLength;
+        }
+
+        // Scanned chunks whose text did not change keep their parse results and linked state
+        List<Chunk> removed = chunks.subList(first, last);
+        int lead = 0;
+        int oldOffset = start;
+        int newOffset = start;
+        while (lead < removed.size() && lead < scanned.size()
+                && sameText(previous, oldOffset, removed.get(lead), umlContent, newOffset, scanned.get(lead))) {
+            oldOffset += removed.get(lead).length;
+            newOffset += scanned.get(lead).length;
+            scanned.set(lead, removed.get(lead));
+            lead++;
+        }
+        int trail = 0;
+        int newEnd = position;
+        while (trail < removed.size() - lead && trail < scanned.size() - lead) {
+            Chunk oldChunk = removed.get(removed.size() - 1 - trail);
+            Chunk newChunk = scanned.get(scanned.size() - 1 - trail);
+            if (!sameText(previous, oldEnd - oldChunk.length, oldChunk, umlContent, newEnd - newChunk.length, newChunk)) {
+                break;
+            }
+            oldEnd -= oldChunk.length;
+            newEnd -= newChunk.length;
+            scanned.set(scanned.size() - 1 - trail, oldChunk);
+            trail++;
+        }
+        List<Chunk> removedChunks = new ArrayList<>(removed.subList(lead, removed.size() - trail));
+        List<Chunk> addedChunks = scanned.subList(lead, scanned.size() - trail);
+
+        int reparsed = 0;
+        for (Chunk chunk : addedChunks) {
+            reparsed += chunk.parse(generator);
+        }
+
+        List<Chunk> edited = linked && patchable ? pairEditedClasses(removedChunks, addedChunks) : null;
+        if (edited != null) {
+            // Edited classes keep their chunk, and with it their linked class and relations
+            int next = 0;
+            for (int i = 0; i < addedChunks.size(); i++) {
+                Chunk added = addedChunks.get(i);
+                if (added.parsedClass == null) {
+                    continue;
+                }
+                Chunk kept = edited.get(next++);
+                kept.length = added.length;
+                kept.parsedClass = added.parsedClass;
+                addedChunks.set(i, kept);
+            }
+        }
+
+        removed.clear();
+        chunks.addAll(first, scanned);
+        text = umlContent;
+        reparsedCount = reparsed;
+
+        if (edited == null || !patch(edited)) {
+            relink();
+        }
+        return assemble();
+    }
+
+    /**
+     * Applies the new version of the document, read to its end, and returns the StructureDefinition built from it.
+     */
+    public StructureDefinition update(Reader umlContent) throws IOException {
+        StringWriter content = new StringWriter();
+        umlContent.transferTo(content);
+        return update(content.toString());
+    }
+
+    /**
+     * Returns the UML model of the latest update, or {@code null} before the first one.
+     */
+    public UML getUML() {
+        return uml;
+    }
+
+    /**
+     * Returns how many class blocks and relation lines the latest update had to parse.
+     */
+    public int getReparsedCount() {
+        return reparsedCount;
+    }
+
+    /**
+     * Returns how many classes the latest update rebuilt or gave new element ids.
+     */
+    public int getRelinkedCount() {
+        return relinkedCount;
+    }
+
+    // -------------------------------------------------------------------------
+    // Scanning
+    // -------------------------------------------------------------------------
+
+    /**
+     * Scans one chunk starting at a line start outside of any class, with the same rules as
+     * {@link FHIRGenerator#scan}.
+     */
+    private Chunk scanChunk(String content, int position) {
+        Chunk chunk = new Chunk();
+        int lineEnd = lineEnd(content, position);
+        int next = nextLine(content, lineEnd);
+        String line = content.substring(position, lineEnd);
+        chunk.addCandidate(line);
+
+        ClassBlock block = generator.openClassBlock(line);
+        if (block == null) {
+            chunk.length = next - position;
+            return chunk;
+        }
+
+        while (next < content.length()) {
+            lineEnd = lineEnd(content, next);
+            line = content.substring(next, lineEnd);
+            next = nextLine(content, lineEnd);
+            chunk.addCandidate(line);
+
+            if (FHIRGenerator.isClassEnd(line)) {
+                chunk.block = block;
+                chunk.length = next - position;
+                return chunk;
+            }
+            block.addBodyLine(line);
+        }
+
+        // A class without a closing line is dropped, but its relation lines still count
+        chunk.length = content.length() - position;
+        return chunk;
+    }
+
+    // Lines end at "\n", "\r" or "\r\n", as in BufferedReader.readLine
+    private static int lineEnd(String content, int position) {
+        int i = position;
+        while (i < content.length() && content.charAt(i) != '\n' && content.charAt(i) != '\r') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int nextLine(String content, int lineEnd) {
+        if (lineEnd == content.length()) {
+            return lineEnd;
+        }
+        if (content.charAt(lineEnd) == '\r' && lineEnd + 1 < content.length() && content.charAt(lineEnd + 1) == '\n') {
+            return lineEnd + 2;
+        }
+        return lineEnd + 1;
+    }
+
+    private static boolean sameText(String previous, int oldOffset, Chunk oldChunk, String content, int newOffset, Chunk newChunk) {
+        return oldChunk.length == newChunk.length
+                && previous.regionMatches(oldOffset, content, newOffset, oldChunk.length);
+    }
+
+    // -------------------------------------------------------------------------
+    // Linking
+    // -------------------------------------------------------------------------
+
+    /**
+     * Returns the old class chunks, in order, if the edit only rewrote the bodies of existing
+     * classes, otherwise {@code null}. Lines outside of classes may change as long as they hold no relation.
+     */
+    private static List<Chunk> pairEditedClasses(List<Chunk> removedChunks, List<Chunk> addedChunks) {
+        List<Chunk> oldClasses = new ArrayList<>();
+        List<Chunk> newClasses = new ArrayList<>();
+        if (!collectClasses(removedChunks, oldClasses) || !collectClasses(addedChunks, newClasses)
+                || oldClasses.size() != newClasses.size()) {
+            return null;
+        }
+        for (int i = 0; i < oldClasses.size(); i++) {
+            ParsedClass oldClass = oldClasses.get(i).parsedClass;
+            ParsedClass newClass = newClasses.get(i).parsedClass;
+            if (!oldClass.umlClassName.equals(newClass.umlClassName)
+                    || !Objects.equals(oldClass.customClassType, newClass.customClassType)) {
+                return null;
+            }
+        }
+        return oldClasses;
+    }
+
+    private static boolean collectClasses(List<Chunk> changed, List<Chunk> classes) {
+        for (Chunk chunk : changed) {
+            if (!chunk.relations.isEmpty()) {
+                return false;
+            }
+            if (chunk.parsedClass != null) {
+                classes.add(chunk);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Links a fresh model from all chunks and records, per class, the relations that set its type,
+     * name and element ids.
+     */
+    private void relink() {
+        linked = false;
+
+        List<ParsedClass> classes = new ArrayList<>();
+        List<Chunk> classChunks = new ArrayList<>();
+        List<RelationLine> relationLines = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            if (chunk.parsedClass != null) {
+                classes.add(chunk.parsedClass);
+                classChunks.add(chunk);
+            }
+            relationLines.addAll(chunk.relations);
+        }
+
+        List<LinkedRelation> linkedRelations = new ArrayList<>();
+        UML built = generator.buildUML(classes, relationLines, linkedRelations);
+
+        Map<UMLClass, Chunk> chunksByClass = new IdentityHashMap<>();
+        List<UMLClass> umlClasses = built.getClasses();
+        for (int i = 0; i < classChunks.size(); i++) {
+            Chunk chunk = classChunks.get(i);
+            chunk.umlClass = umlClasses.get(i);
+            chunk.outgoing = new ArrayList<>();
+            chunk.lastIncoming = null;
+            chunk.parentLink = null;
+            chunk.usedAsParent = false;
+            chunksByClass.put(chunk.umlClass, chunk);
+        }
+        Chunk main = classChunks.isEmpty() ? null : classChunks.get(0);
+
+        // Patching relies on the main class never being a relation target, and on every parent element
+        // having its final id before a child class reads it; the relation order decides both
+        boolean supported = true;
+        for (LinkedRelation linkedRelation : linkedRelations) {
+            Link link = new Link(chunksByClass.get(linkedRelation.from), chunksByClass.get(linkedRelation.to),
+                    linkedRelation.line.fromElementName, linkedRelation.parentFound, linkedRelation.slicesTarget);
+            link.from.outgoing.add(link);
+            link.to.lastIncoming = link;
+            if (link.to == main) {
+                supported = false;
+            }
+            if (link.parentFound) {
+                link.from.usedAsParent = true;
+                if (link.to.usedAsParent) {
+                    supported = false;
+                }
+                link.to.parentLink = link;
+            }
+        }
+
+        for (Chunk chunk : classChunks) {
+            chunk.elementDefinitions = generator.toElementDefinitions(chunk.umlClass);
+        }
+
+        uml = built;
+        mainChunk = main;
+        linked = true;
+        patchable = supported;
+        relinkedCount = classChunks.size();
+    }
+
+    /**
+     * Rebuilds the edited classes in the linked model. Returns false, before changing anything, if the
+     * edit changes which relations find their labelled element; the model must then be linked again.
+     */
+    private boolean patch(List<Chunk> edited) {
+        // A relation that finds or misses its element differently renames its target, which may change titles
+        for (Chunk chunk : edited) {
+            for (Link link : chunk.outgoing) {
+                if (hasElement(chunk, link.label) != link.parentFound) {
+                    return false;
+                }
+            }
+        }
+
+        // Until patching completes, e.g. if a field has a malformed cardinality, the model is linked again on the next update
+        linked = false;
+
+        // Parent element ids and paths as the children last used them
+        Map<Link, String[]> parentIds = new IdentityHashMap<>();
+        for (Chunk chunk : edited) {
+            recordParentIds(chunk, parentIds);
+        }
+
+        // Headers are unchanged, so titles, main elements and relation targets stay as they are
+        for (Chunk chunk : edited) {
+            rebuildElements(chunk);
+        }
+        for (Chunk chunk : edited) {
+            for (Link link : chunk.outgoing) {
+                Element parentElement = chunk.umlClass.findElementByName(link.label);
+                if (link.slicesTarget) {
+                    parentElement.setSliceHeader(true);
+                }
+                if (link.to.lastIncoming == link) {
+                    link.to.umlClass.setType(parentElement != null ? parentElement.getType() : null);
+                }
+            }
+        }
+
+        // Ids are assigned parents first; a child class follows only if its parent element changed
+        PriorityQueue<Chunk> pending = new PriorityQueue<>(Comparator.comparingInt(chunk -> chunk.depth));
+        Set<Chunk> queued = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Chunk chunk : edited) {
+            chunk.depth = depth(chunk);
+            pending.add(chunk);
+            queued.add(chunk);
+        }
+
+        int relinked = 0;
+        while (!pending.isEmpty()) {
+            Chunk chunk = pending.poll();
+            recordParentIds(chunk, parentIds);
+            assignIds(chunk);
+            chunk.elementDefinitions = generator.toElementDefinitions(chunk.umlClass);
+            relinked++;
+
+            for (Link link : chunk.outgoing) {
+                if (link.to.parentLink != link || queued.contains(link.to)) {
+                    continue;
+                }
+                Element parentElement = chunk.umlClass.findElementByName(link.label);
+                String[] before = parentIds.get(link);
+                if (!before[0].equals(parentElement.getElementId()) || !Objects.equals(before[1], parentElement.getPath())) {
+                    link.to.depth = chunk.depth + 1;
+                    pending.add(link.to);
+                    queued.add(link.to);
+                }
+            }
+        }
+
+        linked = true;
+        relinkedCount = relinked;
+        return true;
+    }
+
+    private boolean hasElement(Chunk chunk, String name) {
+        if (chunk == mainChunk && chunk.umlClass.getMainElement().getName().equals(name)) {
+            return true;
+        }
+        for (FieldLine field : chunk.parsedClass.fields) {
+            if (field.name.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void recordParentIds(Chunk chunk, Map<Link, String[]> parentIds) {
+        for (Link link : chunk.outgoing) {
+            if (link.to.parentLink == link && !parentIds.containsKey(link)) {
+                Element parentElement = chunk.umlClass.findElementByName(link.label);
+                parentIds.put(link, new String[]{parentElement.getElementId(), parentElement.getPath()});
+            }
+        }
+    }
+
+    private void rebuildElements(Chunk chunk) {
+        List<Element> elements = chunk.umlClass.getElements();
+        // The main element comes from the header, and children already refer to it
+        Element mainElement = chunk == mainChunk ? elements.get(0) : null;
+        elements.clear();
+        if (mainElement != null) {
+            elements.add(mainElement);
+        }
+        for (FieldLine field : chunk.parsedClass.fields) {
+            elements.add(generator.toElement(field));
+        }
+    }
+
+    private void assignIds(Chunk chunk) {
+        if (chunk == mainChunk) {
+            generator.assignMainClassIds(chunk.umlClass);
+        } else if (chunk.parentLink != null) {
+            Link link = chunk.parentLink;
+            generator.assignChildIds(link.from.umlClass.findElementByName(link.label), chunk.umlClass);
+        }
+    }
+
+    private static int depth(Chunk chunk) {
+        int depth = 0;
+        for (Link link = chunk.parentLink; link != null; link = link.from.parentLink) {
+            depth++;
+        }
+        return depth;
+    }
+
+    private StructureDefinition assemble() {
+        List<ElementDefinition> elementDefinitions = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            if (chunk.parsedClass != null) {
+                elementDefinitions.addAll(chunk.elementDefinitions);
+            }
+        }
+        return generator.newStructureDefinition(elementDefinitions);
+    }
+
+    // -------------------------------------------------------------------------
+    // Document state
+    // -------------------------------------------------------------------------
+
+    /**
+     * A class block or a single line outside of classes, with its parse results and, for a class,
+     * its place in the linked model.
+     */
+    private static final class Chunk {
+        int length;
+
+        // Scan results, dropped once parsed
+        ClassBlock block;
+        List<String> candidates;
+
+        // Set for a closed class block only
+        ParsedClass parsedClass;
+        List<RelationLine> relations = List.of();
+
+        UMLClass umlClass;
+        List<ElementDefinition> elementDefinitions;
+        List<Link> outgoing = List.of();
+        // The last relation targeting this class sets its type; the last one that found its element sets its ids
+        Link lastIncoming;
+        Link parentLink;
+        boolean usedAsParent;
+        int depth;
+
+        void addCandidate(String line) {
+            if (line.startsWith("\"")) {
+                if (candidates == null) {
+                    candidates = new ArrayList<>(1);
+                }
+                candidates.add(line);
+            }
+        }
+
+        /**
+         * Parses the scanned class block and relation lines and returns how many there were.
+         */
+        int parse(FHIRGenerator generator) {
+            int parsed = 0;
+            if (block != null) {
+                parsedClass = generator.parseClassBlock(block);
+                block = null;
+                parsed++;
+            }
+            if (candidates != null) {
+                List<RelationLine> lines = new ArrayList<>(candidates.size());
+                for (String candidate : candidates) {
+                    RelationLine relationLine = generator.parseRelationLine(candidate);
+                    if (relationLine != null) {
+                        lines.add(relationLine);
+                    }
+                }
+                relations = lines.isEmpty() ? List.of() : lines;
+                parsed += candidates.size();
+                candidates = null;
+            }
+            return parsed;
+        }
+    }
+
+    /**
+     * One linked relation between two class chunks.
+     */
+    private static final class Link {
+        final Chunk from;
+        final Chunk to;
+        final String label;
+        final boolean parentFound;
+        final boolean slicesTarget;
+
+        Link(Chunk from, Chunk to, String label, boolean parentFound, boolean slicesTarget) {
+            this.from = from;
+            this.to = to;
+            this.label = label;
+            this.parentFound = parentFound;
+            this.slicesTarget = slicesTarget;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.fhir.uml.generation.uml;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reader that keeps what has been read from the source so far, so a second reader can start
+ * again from the beginning once the first one gives up.
+ * <p>
+ * Used for the fast StructureDefinition path: if {@link StructureDefinitionExtractor} falls back,
+ * the HAPI parser reads the recorded part from memory and the rest straight from the source,
+ * so the input is never copied as a whole before it is known which parser needs it.
+ * Closing this reader closes the source.
+ */
+class ReplayableReader extends Reader {
+
+    private final Reader source;
+    // One array per read, so the recording never has to grow and copy what it already holds
+    private final List<char[]> recorded = new ArrayList<>();
+    private boolean replaying;
+    private int replayChunk;
+    private int replayOffset;
+
+    ReplayableReader(Reader source) {
+        this.source = source;
+    }
+
+    /**
+     * Stops recording and starts over from the first character read.
+     */
+    Reader replay() {
+        replaying = true;
+        replayChunk = 0;
+        replayOffset = 0;
+        return this;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (replaying) {
+            if (replayChunk < recorded.size()) {
+                char[] chunk = recorded.get(replayChunk);
+                int count = Math.min(length, chunk.length - replayOffset);
+                System.arraycopy(chunk, replayOffset, buffer, offset, count);
+                replayOffset += count;
+                if (replayOffset == chunk.length) {
+                    // Replayed chunks are not needed again
+                    recorded.set(replayChunk++, null);
+                    replayOffset = 0;
+                }
+                return count;
+            }
+            return source.read(buffer, offset, length);
+        }
+
+        int count = source.read(buffer, offset, length);
+        if (count > 0) {
+            recorded.add(Arrays.copyOfRange(buffer, offset, offset + count));
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
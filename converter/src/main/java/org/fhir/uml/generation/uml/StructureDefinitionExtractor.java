@@ -0,0 +1,321 @@
+package org.fhir.uml.generation.uml;
+
+import ca.uhn.fhir.context.BaseRuntimeElementDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimePrimitiveDatatypeDefinition;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import org.hl7.fhir.r4.model.ElementDefinition;
+import org.hl7.fhir.r4.model.ElementDefinition.ConstraintSeverity;
+import org.hl7.fhir.r4.model.Enumerations.BindingStrength;
+import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.PrimitiveType;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.hl7.fhir.r4.model.UrlType;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Fast path for reading a StructureDefinition in UML mode.
+ * <p>
+ * Instead of letting HAPI build the whole resource (narrative, mappings, definitions, examples...),
+ * the JSON is read with a streaming token parser and only the fields the UML is built from are kept:
+ * id, path, sliceName, min/max, type code/profile/targetProfile, primitive fixed[x] values, binding,
+ * constraints and slicing discriminators, plus the base definition. The result is a skeleton HAPI
+ * StructureDefinition that the rest of the conversion reads exactly like a fully parsed one.
+ * <p>
+ * Input the fast path cannot reproduce faithfully, such as complex fixed[x] values or primitive
+ * extensions on the fields above, makes {@link #tryExtract} return {@code null}, and the caller
+ * falls back to the HAPI parser. Instances are thread-safe.
+ */
+public class StructureDefinitionExtractor {
+
+    // Fields whose "_name" extension form would change what HAPI gives the conversion
+    private static final Set<String> EXTENDED_FIELDS_NOT_SUPPORTED = Set.of("path", "sliceName", "min", "max");
+
+    private final FhirContext ctx;
+    // Readers belong to the caller, which may still hand them to HAPI after a fallback
+    private final JsonFactory jsonFactory = new JsonFactoryBuilder()
+            .disable(StreamReadFeature.AUTO_CLOSE_SOURCE)
+            .build();
+
+    public StructureDefinitionExtractor(FhirContext ctx) {
+        this.ctx = ctx;
+    }
+
+    /**
+     * Returns the skeleton StructureDefinition, or {@code null} if the input needs the full HAPI parser.
+     */
+    public StructureDefinition tryExtract(String structureDefinitionJson) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(structureDefinitionJson)) {
+            return readStructureDefinition(parser);
+        } catch (UnsupportedInputException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Same as {@link #tryExtract(String)}, reading from {@code reader}. On {@code null} the reader is
+     * left wherever the fallback was detected, usually well before the end of the input.
+     */
+    public StructureDefinition tryExtract(Reader structureDefinitionJson) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(structureDefinitionJson)) {
+            return readStructureDefinition(parser);
+        } catch (UnsupportedInputException e) {
+            return null;
+        }
+    }
+
+    private StructureDefinition readStructureDefinition(JsonParser parser) throws IOException {
+        expect(parser.nextToken() == JsonToken.START_OBJECT);
+
+        StructureDefinition structureDefinition = new StructureDefinition();
+        String resourceType = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "resourceType" -> resourceType = readString(parser, value);
+                case "baseDefinition" -> structureDefinition.setBaseDefinition(readString(parser, value));
+                case "snapshot" -> readElements(parser, value, structureDefinition.getSnapshot().getElement());
+                case "differential" -> readElements(parser, value, structureDefinition.getDifferential().getElement());
+                default -> parser.skipChildren();
+            }
+        }
+        expect("StructureDefinition".equals(resourceType));
+        return structureDefinition;
+    }
+
+    private void readElements(JsonParser parser, JsonToken value, List<ElementDefinition> elements) throws IOException {
+        expect(value == JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken fieldValue = parser.nextToken();
+            if ("element".equals(field)) {
+                expect(fieldValue == JsonToken.START_ARRAY);
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    elements.add(readElement(parser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private ElementDefinition readElement(JsonParser parser) throws IOException {
+        expect(parser.currentToken() == JsonToken.START_OBJECT);
+
+        ElementDefinition elementDefinition = new ElementDefinition();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id" -> elementDefinition.setId(readString(parser, value));
+                case "path" -> elementDefinition.setPath(readString(parser, value));
+                case "sliceName" -> elementDefinition.setSliceName(readString(parser, value));
+                case "min" -> {
+                    expect(value == JsonToken.VALUE_NUMBER_INT);
+                    elementDefinition.setMin(parser.getIntValue());
+                }
+                case "max" -> elementDefinition.setMax(readString(parser, value));
+                case "type" -> readTypes(parser, value, elementDefinition);
+                case "binding" -> readBinding(parser, value, elementDefinition);
+                case "constraint" -> readConstraints(parser, value, elementDefinition);
+                case "slicing" -> readSlicing(parser, value, elementDefinition);
+                default -> {
+                    if (field.startsWith("fixed")) {
+                        elementDefinition.setFixed(readPrimitive(parser, value, field.substring("fixed".length())));
+                    } else {
+                        expect(!field.startsWith("_fixed")
+                                && !(field.startsWith("_") && EXTENDED_FIELDS_NOT_SUPPORTED.contains(field.substring(1))));
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+        return elementDefinition;
+    }
+
+    private void readTypes(JsonParser parser, JsonToken value, ElementDefinition elementDefinition) throws IOException {
+        expect(value == JsonToken.START_ARRAY);
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            ElementDefinition.TypeRefComponent type = elementDefinition.addType();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken fieldValue = parser.nextToken();
+                switch (field) {
+                    case "code" -> type.setCode(readString(parser, fieldValue));
+                    case "profile" -> readStrings(parser, fieldValue).forEach(type::addProfile);
+                    case "targetProfile" -> readStrings(parser, fieldValue).forEach(type::addTargetProfile);
+                    case "extension" -> readFirstExtension(parser, fieldValue, type);
+                    case "_code", "_profile", "_targetProfile" -> throw new UnsupportedInputException();
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        expect(parser.currentToken() == JsonToken.END_ARRAY);
+    }
+
+    /**
+     * Only the first extension of a type is looked at, and only a valueUrl in it overrides the type.
+     */
+    private void readFirstExtension(JsonParser parser, JsonToken value, ElementDefinition.TypeRefComponent type) throws IOException {
+        expect(value == JsonToken.START_ARRAY);
+        boolean first = true;
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            if (!first) {
+                parser.skipChildren();
+                continue;
+            }
+            first = false;
+
+            Extension extension = type.addExtension();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken fieldValue = parser.nextToken();
+                switch (field) {
+                    case "url" -> extension.setUrl(readString(parser, fieldValue));
+                    case "valueUrl" -> extension.setValue(new UrlType(readString(parser, fieldValue)));
+                    case "_valueUrl" -> throw new UnsupportedInputException();
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        expect(parser.currentToken() == JsonToken.END_ARRAY);
+    }
+
+    private void readBinding(JsonParser parser, JsonToken value, ElementDefinition elementDefinition) throws IOException {
+        expect(value == JsonToken.START_OBJECT);
+        ElementDefinition.ElementDefinitionBindingComponent binding = elementDefinition.getBinding();
+        boolean otherContent = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken fieldValue = parser.nextToken();
+            switch (field) {
+                case "strength" -> binding.setStrength(readCode(parser, fieldValue, BindingStrength::fromCode));
+                case "valueSet" -> binding.setValueSet(readString(parser, fieldValue));
+                case "description" -> binding.setDescription(readString(parser, fieldValue));
+                case "_strength", "_valueSet" -> throw new UnsupportedInputException();
+                default -> {
+                    otherContent = true;
+                    parser.skipChildren();
+                }
+            }
+        }
+        // A binding with nothing but extensions is not empty to HAPI, and would be lost here
+        expect(!otherContent || !binding.isEmpty());
+    }
+
+    private void readConstraints(JsonParser parser, JsonToken value, ElementDefinition elementDefinition) throws IOException {
+        expect(value == JsonToken.START_ARRAY);
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            ElementDefinition.ElementDefinitionConstraintComponent constraint = elementDefinition.addConstraint();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken fieldValue = parser.nextToken();
+                switch (field) {
+                    case "key" -> constraint.setKey(readString(parser, fieldValue));
+                    case "severity" -> constraint.setSeverity(readCode(parser, fieldValue, ConstraintSeverity::fromCode));
+                    case "human" -> constraint.setHuman(readString(parser, fieldValue));
+                    case "_key", "_severity", "_human" -> throw new UnsupportedInputException();
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        expect(parser.currentToken() == JsonToken.END_ARRAY);
+    }
+
+    /**
+     * Only whether discriminators exist is used, so they are counted, not read.
+     */
+    private void readSlicing(JsonParser parser, JsonToken value, ElementDefinition elementDefinition) throws IOException {
+        expect(value == JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken fieldValue = parser.nextToken();
+            if ("discriminator".equals(field)) {
+                expect(fieldValue == JsonToken.START_ARRAY);
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    elementDefinition.getSlicing().addDiscriminator();
+                }
+                expect(parser.currentToken() == JsonToken.END_ARRAY);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Reads a fixed[x] value. Only primitive types are supported; their text goes through the same
+     * HAPI datatype as in a full parse, so the value is normalized the same way.
+     */
+    private PrimitiveType<?> readPrimitive(JsonParser parser, JsonToken value, String typeSuffix) throws IOException {
+        expect(value.isScalarValue() && value != JsonToken.VALUE_NULL && !typeSuffix.isEmpty());
+
+        String typeName = Character.toLowerCase(typeSuffix.charAt(0)) + typeSuffix.substring(1);
+        BaseRuntimeElementDefinition<?> definition = ctx.getElementDefinition(typeName);
+        expect(definition instanceof RuntimePrimitiveDatatypeDefinition);
+
+        String text = parser.getText();
+        expect(!text.isEmpty());
+        try {
+            PrimitiveType<?> primitive = (PrimitiveType<?>) definition.newInstance();
+            primitive.setValueAsString(text);
+            return primitive;
+        } catch (RuntimeException e) {
+            throw new UnsupportedInputException();
+        }
+    }
+
+    private <T> T readCode(JsonParser parser, JsonToken value, CodeParser<T> codeParser) throws IOException {
+        String code = readString(parser, value);
+        try {
+            return codeParser.parse(code);
+        } catch (Exception e) {
+            throw new UnsupportedInputException();
+        }
+    }
+
+    private String readString(JsonParser parser, JsonToken value) throws IOException {
+        expect(value == JsonToken.VALUE_STRING);
+        return parser.getText();
+    }
+
+    private List<String> readStrings(JsonParser parser, JsonToken value) throws IOException {
+        expect(value == JsonToken.START_ARRAY);
+        List<String> values = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.VALUE_STRING) {
+            values.add(parser.getText());
+        }
+        expect(parser.currentToken() == JsonToken.END_ARRAY);
+        return values;
+    }
+
+    private static void expect(boolean condition) {
+        if (!condition) {
+            throw new UnsupportedInputException();
+        }
+    }
+
+    @FunctionalInterface
+    private interface CodeParser<T> {
+        T parse(String code) throws Exception;
+    }
+
+    /**
+     * Thrown when the input uses something the fast path does not handle; never leaves this class.
+     */
+    private static final class UnsupportedInputException extends RuntimeException {
+        UnsupportedInputException() {
+            super(null, null, false, false);
+        }
+    }
+}
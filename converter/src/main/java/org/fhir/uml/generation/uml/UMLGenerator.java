@@ -0,0 +1,250 @@
+package org.fhir.uml.generation.uml;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import org.fhir.uml.generation.uml.elements.Element;
+import org.fhir.uml.generation.uml.elements.Legend;
+import org.fhir.uml.generation.uml.elements.UML;
+import org.fhir.uml.generation.uml.types.ImageFormat;
+import org.fhir.uml.generation.uml.types.LegendPosition;
+import org.fhir.uml.generation.uml.utils.ConversionOptions;
+import org.fhir.uml.generation.uml.utils.FhirContextHolder;
+import org.fhir.uml.generation.uml.utils.Utils;
+import org.hl7.fhir.r4.model.StructureDefinition;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Embeddable FHIR StructureDefinition → UML conversion engine, which also turns
+ * PlantUML text back into a StructureDefinition.
+ * <p>
+ * One instance uses a single {@link FhirContext}, by default the shared one from
+ * {@link FhirContextHolder}, so repeated conversions in the
+ * same JVM (for example inside the server) skip context construction and model
+ * class scanning after the first call. Every conversion builds its own model with
+ * its own {@link ConversionOptions}, so one instance can serve concurrent callers.
+ */
+public class UMLGenerator {
+
+    private final FhirContext ctx;
+    private final StructureDefinitionExtractor extractor;
+
+    public UMLGenerator() {
+        this(FhirContextHolder.getContext());
+    }
+
+    public UMLGenerator(FhirContext ctx) {
+        this.ctx = ctx;
+        this.extractor = new StructureDefinitionExtractor(ctx);
+    }
+
+    // -------------------------------------------------------------------------
+    // Public API
+    // -------------------------------------------------------------------------
+
+    /**
+     * Converts a StructureDefinition (JSON) into PlantUML text.
+     */
+    public String generatePlantUml(String structureDefinitionJson, ConversionOptions options) throws Exception {
+        return generate(structureDefinitionJson, options).toString();
+    }
+
+    /**
+     * Converts a StructureDefinition (JSON) into PlantUML text written straight to {@code out}.
+     */
+    public void generatePlantUml(String structureDefinitionJson, ConversionOptions options, Appendable out) throws Exception {
+        generate(structureDefinitionJson, options).writeTo(out);
+    }
+
+    /**
+     * Converts PlantUML text back into a StructureDefinition and encodes it as JSON straight
+     * to {@code out}, so the document is never held as one string. The stream is flushed, not closed.
+     */
+    public void generateStructureDefinition(Reader plantUml, OutputStream out, boolean prettyPrint) throws IOException {
+        parseStructureDefinition(plantUml).writeTo(out, prettyPrint);
+    }
+
+    /**
+     * Converts PlantUML text back into a StructureDefinition without encoding it yet, so a
+     * malformed diagram fails before any output file or response is opened.
+     */
+    public ParsedStructureDefinition parseStructureDefinition(Reader plantUml) throws IOException {
+        return new ParsedStructureDefinition(new FHIRGenerator().parseUMLFile(plantUml));
+    }
+
+    /**
+     * Converts a StructureDefinition (JSON) into a PNG diagram.
+     */
+    public byte[] generateImage(String structureDefinitionJson, ConversionOptions options) throws Exception {
+        return generateImage(structureDefinitionJson, options, ImageFormat.PNG);
+    }
+
+    /**
+     * Converts a StructureDefinition (JSON) into a diagram of the given format.
+     */
+    public byte[] generateImage(String structureDefinitionJson, ConversionOptions options, ImageFormat imageFormat) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        generateImage(structureDefinitionJson, options, imageFormat, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Converts a StructureDefinition (JSON) into a diagram and writes it straight to {@code out}.
+     */
+    public void generateImage(String structureDefinitionJson, ConversionOptions options, ImageFormat imageFormat, OutputStream out) throws Exception {
+        UML uml = generate(structureDefinitionJson, options);
+        Utils.generateUMLDiagram(uml, out, imageFormat);
+    }
+
+    /**
+     * Parses the StructureDefinition (JSON) and builds the UML model for it.
+     */
+    public UML generate(String structureDefinitionJson, ConversionOptions options) throws Exception {
+        if (options.isFastParse()) {
+            StructureDefinition extracted = extractor.tryExtract(structureDefinitionJson);
+            if (extracted != null) {
+                return generate(extracted, options);
+            }
+        }
+
+        IParser parser = jsonParser(false);
+        StructureDefinition structureDefinition = parser.parseResource(
+                StructureDefinition.class,
+                structureDefinitionJson
+        );
+        return generate(structureDefinition, options);
+    }
+
+    /**
+     * Parses the StructureDefinition (JSON) straight from {@code reader} and builds the UML model for it.
+     * The parser consumes the stream as it goes, so the raw text is never held in memory as a whole.
+     * With {@link ConversionOptions#isFastParse()} the text read by the fast path is kept, so that
+     * on a fallback the HAPI parser reads that part again from memory and the rest from the stream.
+     */
+    public UML generate(Reader structureDefinitionJson, ConversionOptions options) throws Exception {
+        if (options.isFastParse()) {
+            ReplayableReader replayable = new ReplayableReader(structureDefinitionJson);
+            StructureDefinition extracted = extractor.tryExtract(replayable);
+            if (extracted != null) {
+                return generate(extracted, options);
+            }
+            structureDefinitionJson = replayable.replay();
+        }
+
+        IParser parser = jsonParser(false);
+        StructureDefinition structureDefinition = parser.parseResource(
+                StructureDefinition.class,
+                structureDefinitionJson
+        );
+        return generate(structureDefinition, options);
+    }
+
+    /**
+     * Builds the UML model for an already parsed StructureDefinition.
+     */
+    public UML generate(StructureDefinition structureDefinition, ConversionOptions options) throws Exception {
+        return generate(structureDefinition, options, StructureDefinitionWrapper.defaultParallelBuildThreshold());
+    }
+
+    /**
+     * Same as {@link #generate(StructureDefinition, ConversionOptions)}, with the element count
+     * from which a parallel build is used, so tests can compare it with the sequential one.
+     */
+    UML generate(StructureDefinition structureDefinition, ConversionOptions options, int parallelBuildThreshold) throws Exception {
+        UML uml = new UML(options);
+        StructureDefinitionWrapper structureDefinitionWrapper = new StructureDefinitionWrapper(structureDefinition, uml, parallelBuildThreshold);
+
+        // Only the rendered view is built; the differential view pulls in the snapshot itself
+        if (options.isDifferential()) {
+            structureDefinitionWrapper.processDifferential();
+            structureDefinitionWrapper.releaseStructureDefinition();
+            structureDefinitionWrapper.mapDifferentialElementsWithSnapshotElements();
+            if (options.isReduceSliceClasses()) {
+                structureDefinitionWrapper.reduceDifferentialSliceClasses();
+            }
+            structureDefinitionWrapper.generateDifferentialUMLClasses();
+        } else {
+            structureDefinitionWrapper.processSnapshot();
+            structureDefinitionWrapper.releaseStructureDefinition();
+            if (options.isReduceSliceClasses()) {
+                structureDefinitionWrapper.reduceSnapshotSliceClasses();
+            }
+            structureDefinitionWrapper.generateSnapshotUMLClasses();
+        }
+
+        uml.getMainClass().setName(Element.getURLLastPath(structureDefinitionWrapper.getBaseDefinition()));
+
+        structureDefinitionWrapper.generateUMLRelations();
+
+        uml.setLegend(buildLegend(uml, options));
+        return uml;
+    }
+
+    // -------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------
+
+    /**
+     * Reuses the calling thread's parser for the shared context; a custom context gets a fresh parser.
+     */
+    private IParser jsonParser(boolean prettyPrint) {
+        if (ctx == FhirContextHolder.getContext()) {
+            return prettyPrint ? FhirContextHolder.prettyJsonParser() : FhirContextHolder.jsonParser();
+        }
+        return ctx.newJsonParser().setPrettyPrint(prettyPrint);
+    }
+
+    private Legend buildLegend(UML uml, ConversionOptions options) {
+        Legend legend = new Legend();
+        legend.setXPosition(LegendPosition.XPosition.RIGHT);
+        legend.setYPosition(LegendPosition.YPosition.TOP);
+
+        legend.addGroup("StructureDefinition")
+                .setHeader("Type", "Value")
+                .addRow("url", "https://fhir.ee/base/StructureDefinition/ee-patient")
+                .addRow("version", "1.1.1")
+                .addRow("name", "EEBasePatient")
+                .addRow("status", "Draft")
+                .addRow("kind", "Resource")
+                .addRow("type", "Patient")
+                .addRow("abstract", "false")
+                .addRow("baseDefinition", "http://hl7.org/fhir/StructureDefinition/Patient");
+
+        if (options.isShowConstraints()) {
+            Legend.LegendGroup constraintGroup = legend.addGroup("Constraints");
+            constraintGroup.setHeader("Key", "Severity", "Human");
+
+            uml.getConstraints().values().forEach(constraint -> {
+                constraintGroup.addRow(constraint.getKey(), constraint.getSeverity(), String.format("wrap2(\"%s\", 50)", constraint.getHuman()));
+            });
+        }
+
+        return legend;
+    }
+
+    /**
+     * StructureDefinition parsed from PlantUML, waiting to be encoded as JSON.
+     */
+    public final class ParsedStructureDefinition {
+        private final StructureDefinition structureDefinition;
+
+        private ParsedStructureDefinition(StructureDefinition structureDefinition) {
+            this.structureDefinition = structureDefinition;
+        }
+
+        /**
+         * Encodes the StructureDefinition as JSON straight to {@code out}. The stream is flushed, not closed.
+         */
+        public void writeTo(OutputStream out, boolean prettyPrint) throws IOException {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            jsonParser(prettyPrint).encodeResourceToWriter(structureDefinition, writer);
+            writer.flush();
+        }
+    }
+}
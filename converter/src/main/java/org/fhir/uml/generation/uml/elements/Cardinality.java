@@ -43,7 +43,7 @@ public class Cardinality {
             return "";
         }
 
-        return String.format("[%s..%s]", min, max);
+        return "[" + min + ".." + max + "]";
     }
 
     public String relationString() {
@@ -51,10 +51,10 @@ public class Cardinality {
             return "";
         }
 
-        return String.format("%s..%s", min, max);
+        return min + ".." + max;
     }
 
-    public Boolean isRemoved() {
+    public boolean isRemoved() {
         return Objects.equals(min, "0") && Objects.equals(max, "0");
     }
 }
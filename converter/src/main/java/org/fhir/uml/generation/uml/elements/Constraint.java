@@ -1,9 +1,15 @@
 package org.fhir.uml.generation.uml.elements;
 
-public class Constraint {
-    private String key;
-    private String severity;
-    private String human;
+import java.util.Objects;
+
+/**
+ * Immutable FHIR constraint. Equal constraints are shared between elements of one conversion,
+ * see {@link ElementFactory}.
+ */
+public final class Constraint {
+    private final String key;
+    private final String severity;
+    private final String human;
 
     public Constraint(String key, String severity, String human) {
         this.key = key;
@@ -23,15 +29,18 @@ public class Constraint {
         return human;
     }
 
-    public void setKey(String key) {
-        this.key = key;
-    }
-
-    public void setSeverity(String severity) {
-        this.severity = severity;
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Constraint that = (Constraint) o;
+        return Objects.equals(key, that.key)
+                && Objects.equals(severity, that.severity)
+                && Objects.equals(human, that.human);
     }
 
-    public void setHuman(String human) {
-        this.human = human;
+    @Override
+    public int hashCode() {
+        return Objects.hash(key, severity, human);
     }
 }
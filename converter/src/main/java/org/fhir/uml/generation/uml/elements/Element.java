@@ -2,13 +2,17 @@ package org.fhir.uml.generation.uml.elements;
 
 import org.fhir.uml.generation.uml.types.ElementModifiers;
 import org.fhir.uml.generation.uml.types.ElementVisability; // If you control this class name, consider renaming to ElementVisibility
-import org.fhir.uml.generation.uml.utils.Config;
+import org.fhir.uml.generation.uml.utils.ConversionOptions;
 import org.hl7.fhir.r4.model.CanonicalType;
 import org.hl7.fhir.r4.model.ElementDefinition;
 import org.hl7.fhir.r4.model.Extension;
 import org.hl7.fhir.r4.model.UrlType;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -26,17 +30,17 @@ public class Element {
     private ElementVisability visibility;
     private Cardinality cardinality;
     private String description;
-    private Boolean isMain;
-    private Boolean isSliceHeader = false;
-    private Boolean hasFixedValue;
+    private boolean isMain;
+    private boolean isSliceHeader = false;
+    private boolean hasFixedValue;
     private String fixedValue;
     private Integer commentId;
-    private Boolean choiceOfTypeHeader;
-    private Boolean choiceOfTypeElement;
-    private String id;
+    private boolean choiceOfTypeHeader;
+    private boolean choiceOfTypeElement;
+    private ElementPath id;
     private String path;
-    private Boolean hasSliceName;
-    private final List<ElementModifiers> differentialModifiers = new ArrayList<>();
+    private boolean hasSliceName;
+    private final EnumSet<ElementModifiers> differentialModifiers = EnumSet.noneOf(ElementModifiers.class);
     private Binding binding;
     private List<Constraint> constraints;
     private String group;
@@ -49,14 +53,14 @@ public class Element {
                     ElementVisability visibility,
                     Cardinality cardinality,
                     String description,
-                    Boolean hasFixedValue,
+                    boolean hasFixedValue,
                     Integer commentId,
-                    Boolean choiceOfTypeHeader,
-                    Boolean choiceOfTypeElement,
+                    boolean choiceOfTypeHeader,
+                    boolean choiceOfTypeElement,
                     String fixedValue,
                     String id,
-                    Boolean hasSliceName,
-                    Boolean isMain,
+                    boolean hasSliceName,
+                    boolean isMain,
                     Binding binding,
                     List<Constraint> constraints) {
 
@@ -70,7 +74,7 @@ public class Element {
         this.choiceOfTypeHeader = choiceOfTypeHeader;
         this.choiceOfTypeElement = choiceOfTypeElement;
         this.fixedValue = fixedValue;
-        this.id = id;
+        this.id = ElementPath.of(id);
         this.path = "";
         this.hasSliceName = hasSliceName;
         this.isMain = isMain;
@@ -197,10 +201,10 @@ public class Element {
         private ElementVisability visibility;
         private Cardinality cardinality;
         private String description;
-        private Boolean hasFixedValue;
+        private boolean hasFixedValue;
         private Integer commentId;
-        private Boolean choiceOfTypeHeader;
-        private Boolean choiceOfTypeElement;
+        private boolean choiceOfTypeHeader;
+        private boolean choiceOfTypeElement;
         private String fixedValue;
         private String id;
         private boolean hasSliceName;
@@ -251,7 +255,7 @@ public class Element {
             return this;
         }
 
-        public Builder hasFixedValue(Boolean hasFixedValue) {
+        public Builder hasFixedValue(boolean hasFixedValue) {
             this.hasFixedValue = hasFixedValue;
             return this;
         }
@@ -261,12 +265,12 @@ public class Element {
             return this;
         }
 
-        public Builder choiceOfTypeHeader(Boolean choiceOfTypeHeader) {
+        public Builder choiceOfTypeHeader(boolean choiceOfTypeHeader) {
             this.choiceOfTypeHeader = choiceOfTypeHeader;
             return this;
         }
 
-        public Builder choiceOfTypeElement(Boolean choiceOfTypeElement) {
+        public Builder choiceOfTypeElement(boolean choiceOfTypeElement) {
             this.choiceOfTypeElement = choiceOfTypeElement;
             return this;
         }
@@ -281,12 +285,12 @@ public class Element {
             return this;
         }
 
-        public Builder hasSliceName(Boolean hasSliceName) {
+        public Builder hasSliceName(boolean hasSliceName) {
             this.hasSliceName = hasSliceName;
             return this;
         }
 
-        public Builder isMain(Boolean isMain) {
+        public Builder isMain(boolean isMain) {
             this.isMain = isMain;
             return this;
         }
@@ -317,7 +321,8 @@ public class Element {
                     this.hasSliceName,
                     this.isMain,
                     this.binding,
-                    this.constraints
+                    // Most elements have no constraints; do not keep an empty list per element
+                    this.constraints.isEmpty() ? Collections.emptyList() : this.constraints
             );
         }
     }
@@ -345,43 +350,47 @@ public class Element {
         return description;
     }
 
-    public Boolean getChoiceOfTypeElement() {
+    public boolean getChoiceOfTypeElement() {
         return choiceOfTypeElement;
     }
 
-    public Boolean isChoiceOfTypeHeader() {
+    public boolean isChoiceOfTypeHeader() {
         return choiceOfTypeHeader;
     }
 
-    public Boolean isChoiceOfTypeElement() {
+    public boolean isChoiceOfTypeElement() {
         return choiceOfTypeElement;
     }
 
-    public Boolean getHasSliceName() {
+    public boolean getHasSliceName() {
         return hasSliceName;
     }
 
-    public void setHasSliceName(Boolean hasSliceName) {
+    public void setHasSliceName(boolean hasSliceName) {
         this.hasSliceName = hasSliceName;
     }
 
-    public Boolean isSliceHeader() {
+    public boolean isSliceHeader() {
         return isSliceHeader;
     }
 
-    public void setSliceHeader(Boolean sliceHeader) {
+    public void setSliceHeader(boolean sliceHeader) {
         this.isSliceHeader = sliceHeader;
     }
 
     public String getElementId() {
+        return this.id.toString();
+    }
+
+    public ElementPath getElementPath() {
         return this.id;
     }
 
-    public Boolean isMain() {
+    public boolean isMain() {
         return isMain;
     }
 
-    public void setIsMain(Boolean isMain) {
+    public void setIsMain(boolean isMain) {
         this.isMain = isMain;
     }
 
@@ -394,7 +403,7 @@ public class Element {
     }
 
     public void setId(String id) {
-        this.id = id;
+        this.id = ElementPath.of(id);
     }
 
     public void setType(String type) {
@@ -422,15 +431,11 @@ public class Element {
     // ---------------------------------------------------------------------------------------------
 
     /**
-     * Returns the element's parent name by splitting the ID on '.' or ':'.
+     * Returns the element's parent name, i.e. the second to last segment of the ID.
      * Example: "Patient.identifier" → parent name is "Patient".
      */
     public String getParentName() {
-        String[] parts = this.id.split("\\.|:");
-        if (parts.length < 2) {
-            return null;
-        }
-        return parts[parts.length - 2];
+        return id.getParentName();
     }
 
     /**
@@ -438,31 +443,20 @@ public class Element {
      * Example: "Patient.identifier.system" → "Patient.identifier"
      */
     public String getParentId() {
-        int lastDotIndex = id.lastIndexOf('.');
-        int lastColonIndex = id.lastIndexOf(':');
-        int splitIndex = Math.max(lastDotIndex, lastColonIndex);
-
-        if (splitIndex == -1) {
-            return id;
-        }
-        return id.substring(0, splitIndex);
+        return id.getParent().toString();
     }
 
     /**
      * Returns the slice's parent ID by trimming everything after the last ':'.
      */
     public String getSliceParentId() {
-        int lastColonIndex = id.lastIndexOf(':');
-        if (lastColonIndex == -1) {
-            return id;
-        }
-        return id.substring(0, lastColonIndex);
+        return id.getSliceParent().toString();
     }
 
     /**
      * Determines if this element is a data type (i.e., if the type starts with an uppercase letter).
      */
-    public Boolean isDataType() {
+    public boolean isDataType() {
         return type != null
                 && !type.isEmpty()
                 && Character.isUpperCase(type.charAt(0));
@@ -472,7 +466,7 @@ public class Element {
      * Matches visibility to its UML representation symbol (e.g., "+" for public).
      */
     public String matchVisibilitySymbol() {
-        if (Boolean.TRUE.equals(this.isMain)) {
+        if (this.isMain) {
             return "-";
         }
         if (this.visibility == null) {
@@ -492,22 +486,29 @@ public class Element {
         copyValuesFrom(source, false);
     }
 
+    /**
+     * Copies every differing field from {@code source} and records which fields the differential
+     * did not change, so they can be rendered as inherited.
+     * <p>
+     * Human-readable change descriptions are only built (and printed) when {@code logDifferences}
+     * is true; otherwise an empty list is returned and no strings are created.
+     */
     public List<String> copyValuesFrom(Element source, boolean logDifferences) {
-        List<String> changes = new ArrayList<>();
+        List<String> changes = logDifferences ? new ArrayList<>() : null;
 
         if (source == null) {
-            return changes; // Empty list, no changes.
+            return changes != null ? changes : Collections.emptyList(); // Empty list, no changes.
         }
 
         // -- Example: name --
         if (!Objects.equals(this.name, source.name)) {
-            changes.add("name: " + this.name + " -> " + source.name);
+            logChange(changes, "name", this.name, source.name);
             this.name = source.name;
         }
 
         // -- type --
         if (!Objects.equals(this.type, source.type)) {
-            changes.add("type: " + this.type + " -> " + source.type);
+            logChange(changes, "type", this.type, source.type);
             this.type = source.type;
         } else {
             differentialModifiers.add(ElementModifiers.TYPE);
@@ -515,7 +516,7 @@ public class Element {
 
         // -- visibility --
         if (!Objects.equals(this.visibility, source.visibility)) {
-            changes.add("visibility: " + this.visibility + " -> " + source.visibility);
+            logChange(changes, "visibility", this.visibility, source.visibility);
             this.visibility = source.visibility;
         }
 
@@ -525,7 +526,7 @@ public class Element {
 
         // -- cardinality MAX --
         if (!Objects.equals(this.cardinality.getMax(), source.cardinality.getMax())) {
-            changes.add("MAX cardinality: " + this.cardinality.getMax() + " -> " + source.cardinality.getMax());
+            logChange(changes, "MAX cardinality", this.cardinality.getMax(), source.cardinality.getMax());
             this.cardinality.setMax(source.cardinality.getMax());
         } else {
             differentialModifiers.add(ElementModifiers.CARDINALITY_MAX);
@@ -533,7 +534,7 @@ public class Element {
 
         // -- cardinality MIN -
         if (!Objects.equals(this.cardinality.getMin(), source.cardinality.getMin())) {
-            changes.add("MIN cardinality: " + this.cardinality.getMin() + " -> " + source.cardinality.getMin());
+            logChange(changes, "MIN cardinality", this.cardinality.getMin(), source.cardinality.getMin());
             this.cardinality.setMin(source.cardinality.getMin());
         } else {
             differentialModifiers.add(ElementModifiers.CARDINALITY_MIN);
@@ -541,31 +542,31 @@ public class Element {
 
         // -- description --
         if (!Objects.equals(this.description, source.description)) {
-            changes.add("description: " + this.description + " -> " + source.description);
+            logChange(changes, "description", this.description, source.description);
             this.description = source.description;
         }
 
         // -- isMain --
-        if (!Objects.equals(this.isMain, source.isMain)) {
-            changes.add("isMain: " + this.isMain + " -> " + source.isMain);
+        if (this.isMain != source.isMain) {
+            logChange(changes, "isMain", this.isMain, source.isMain);
             this.isMain = source.isMain;
         }
 
         // -- isSliceHeader --
-        if (!Objects.equals(this.isSliceHeader, source.isSliceHeader)) {
-            changes.add("isSliceHeader: " + this.isSliceHeader + " -> " + source.isSliceHeader);
+        if (this.isSliceHeader != source.isSliceHeader) {
+            logChange(changes, "isSliceHeader", this.isSliceHeader, source.isSliceHeader);
             this.isSliceHeader = source.isSliceHeader;
         }
 
         // -- hasFixedValue --
-        if (!Objects.equals(this.hasFixedValue, source.hasFixedValue)) {
-            changes.add("hasFixedValue: " + this.hasFixedValue + " -> " + source.hasFixedValue);
+        if (this.hasFixedValue != source.hasFixedValue) {
+            logChange(changes, "hasFixedValue", this.hasFixedValue, source.hasFixedValue);
             this.hasFixedValue = source.hasFixedValue;
         }
 
         // -- fixedValue --
         if (!Objects.equals(this.fixedValue, source.fixedValue)) {
-            changes.add("fixedValue: " + this.fixedValue + " -> " + source.fixedValue);
+            logChange(changes, "fixedValue", this.fixedValue, source.fixedValue);
             this.fixedValue = source.fixedValue;
         } else {
             differentialModifiers.add(ElementModifiers.FIXED_VALUE);
@@ -573,47 +574,51 @@ public class Element {
 
         // -- commentId --
         if (!Objects.equals(this.commentId, source.commentId)) {
-            changes.add("commentId: " + this.commentId + " -> " + source.commentId);
+            logChange(changes, "commentId", this.commentId, source.commentId);
             this.commentId = source.commentId;
         }
 
         // -- choiceOfTypeHeader --
-        if (!Objects.equals(this.choiceOfTypeHeader, source.choiceOfTypeHeader)) {
-            changes.add("choiceOfTypeHeader: " + this.choiceOfTypeHeader + " -> " + source.choiceOfTypeHeader);
+        if (this.choiceOfTypeHeader != source.choiceOfTypeHeader) {
+            logChange(changes, "choiceOfTypeHeader", this.choiceOfTypeHeader, source.choiceOfTypeHeader);
             this.choiceOfTypeHeader = source.choiceOfTypeHeader;
         }
 
         // -- choiceOfTypeElement --
-        if (!Objects.equals(this.choiceOfTypeElement, source.choiceOfTypeElement)) {
-            changes.add("choiceOfTypeElement: " + this.choiceOfTypeElement + " -> " + source.choiceOfTypeElement);
+        if (this.choiceOfTypeElement != source.choiceOfTypeElement) {
+            logChange(changes, "choiceOfTypeElement", this.choiceOfTypeElement, source.choiceOfTypeElement);
             this.choiceOfTypeElement = source.choiceOfTypeElement;
         }
 
         // -- id --
         if (!Objects.equals(this.id, source.id)) {
-            changes.add("id: " + this.id + " -> " + source.id);
+            logChange(changes, "id", this.id, source.id);
             this.id = source.id;
         }
 
         // -- path --
         if (!Objects.equals(this.path, source.path)) {
-            changes.add("path: " + this.path + " -> " + source.path);
+            logChange(changes, "path", this.path, source.path);
             this.path = source.path;
         }
 
         // -- hasSliceName --
-        if (!Objects.equals(this.hasSliceName, source.hasSliceName)) {
-            changes.add("hasSliceName: " + this.hasSliceName + " -> " + source.hasSliceName);
+        if (this.hasSliceName != source.hasSliceName) {
+            logChange(changes, "hasSliceName", this.hasSliceName, source.hasSliceName);
             this.hasSliceName = source.hasSliceName;
         }
 
         if (!Objects.equals(this.constraints, source.constraints)) {
-            changes.add("constraints: " + this.constraints + " -> " + source.constraints);
+            logChange(changes, "constraints", this.constraints, source.constraints);
             this.constraints = source.constraints;
         }
 
-        // Optionally log differences
-        if (logDifferences && !changes.isEmpty()) {
+        if (changes == null) {
+            return Collections.emptyList();
+        }
+
+        // Log differences
+        if (!changes.isEmpty()) {
             System.out.println("Changes applied to " + getElementId() + ": ");
             for (String change : changes) {
                 System.out.println("  " + change);
@@ -623,81 +628,121 @@ public class Element {
         return changes;
     }
 
-    private String wrapVariable(String value, ElementModifiers modifier) {
-        if (value == null) {
-            return null;
+    private static void logChange(List<String> changes, String field, Object oldValue, Object newValue) {
+        if (changes != null) {
+            changes.add(field + ": " + oldValue + " -> " + newValue);
         }
+    }
 
-        if (value.isBlank()) {
-            return value;
+    /**
+     * Appends {@code value} decorated for the given modifier: struck through when removed,
+     * black/bold when the differential view marks it as inherited. Null is written as "null"
+     * and blank values are written unchanged.
+     */
+    private void appendWrapped(Appendable out, String value, ElementModifiers modifier) throws IOException {
+        if (value == null || value.isBlank()) {
+            out.append(value);
+            return;
         }
 
-        if (isRemoved() && modifier == ElementModifiers.STRICKEN_THROUGH) {
-            return "strikethrough('" + value + "')";
+        if (modifier == ElementModifiers.STRICKEN_THROUGH && isRemoved()) {
+            out.append("strikethrough('").append(value).append("')");
+            return;
         }
 
         if (modifier == ElementModifiers.NAME && differentialModifiers.size() > 1) {
-            return "black('" + value + "')";
+            out.append("black('").append(value).append("')");
+            return;
         }
 
         if (differentialModifiers.contains(modifier)) {
-            return "black(bold('" + value + "'))";
+            out.append("black(bold('").append(value).append("'))");
+            return;
         }
-        return value;
+        out.append(value);
     }
 
-    private String matchCardinality() {
-        String min = wrapVariable(cardinality.getMin(), ElementModifiers.CARDINALITY_MIN);
-        String max = wrapVariable(cardinality.getMax(), ElementModifiers.CARDINALITY_MAX);
+    private void appendCardinality(Appendable out) throws IOException {
+        String min = cardinality.getMin();
+        String max = cardinality.getMax();
 
         if (min.isBlank() && max.isBlank()) {
-            return "";
+            return;
         }
 
-        return String.format("[%s..%s]",min,max);
+        out.append('[');
+        appendWrapped(out, min, ElementModifiers.CARDINALITY_MIN);
+        out.append("..");
+        appendWrapped(out, max, ElementModifiers.CARDINALITY_MAX);
+        out.append(']');
     }
 
-    private String matchConstraints() {
-        StringBuilder sb = new StringBuilder();
-        if (!constraints.isEmpty() && Config.getInstance().isShowConstraints()) {
-            String constraintListStr = constraints.stream()
-                    .map(Constraint::getKey) // Extract keys
-                    .collect(Collectors.joining(","));
-            sb.append("<sup>(").append(constraintListStr).append(")</sup>");
+    private void appendConstraints(Appendable out, ConversionOptions options) throws IOException {
+        if (constraints.isEmpty() || !options.isShowConstraints()) {
+            return;
         }
 
-        return sb.toString();
+        out.append("<sup>(");
+        for (int i = 0; i < constraints.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(constraints.get(i).getKey());
+        }
+        out.append(")</sup>");
     }
 
     @Override
     public String toString() {
-        if (isRemoved() && !Config.getInstance().isHideRemovedObjects()) {
-            return String.format("{field} %s %s", matchVisibilitySymbol(), wrapVariable(String.format("%s : %s %s %s", name, type, fixedValue, cardinality), ElementModifiers.STRICKEN_THROUGH));
-        }
-
-        String fixedValueStr = wrapVariable(fixedValue, ElementModifiers.FIXED_VALUE);
-
-        String fixedValuePart = (fixedValueStr == null || fixedValueStr.isBlank())
-                ? ""
-                : "= " + fixedValueStr;
+        return toString(ConversionOptions.DEFAULT);
+    }
 
+    /**
+     * Renders the element as a PlantUML field line using the options of the diagram it belongs to.
+     */
+    public String toString(ConversionOptions options) {
         StringBuilder sb = new StringBuilder();
-
-        sb.append(String.format(
-                "{field} %s %s : %s %s %s %s%s",
-                matchVisibilitySymbol(),
-                wrapVariable(name, ElementModifiers.NAME),
-                wrapVariable(type, ElementModifiers.TYPE),
-                fixedValuePart,
-                matchCardinality(),
-                wrapVariable(description, ElementModifiers.DESCRIPTION),
-                this.matchConstraints()
-        ));
-
-        if (binding != null && Config.getInstance().isShowBindnigs()) {
-            sb.append("\n\t").append(wrapVariable(binding.toString(), ElementModifiers.BINDING));
+        try {
+            writeTo(sb, options);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-
         return sb.toString();
     }
+
+    /**
+     * Writes the PlantUML field line(s) for this element to {@code out}.
+     */
+    public void writeTo(Appendable out, ConversionOptions options) throws IOException {
+        out.append("{field} ").append(matchVisibilitySymbol()).append(' ');
+
+        if (isRemoved() && !options.isHideRemovedObjects()) {
+            out.append("strikethrough('")
+                    .append(name).append(" : ")
+                    .append(type).append(' ')
+                    .append(fixedValue).append(' ')
+                    .append(cardinality.toString())
+                    .append("')");
+            return;
+        }
+
+        appendWrapped(out, name, ElementModifiers.NAME);
+        out.append(" : ");
+        appendWrapped(out, type, ElementModifiers.TYPE);
+        out.append(' ');
+        if (fixedValue != null && !fixedValue.isBlank()) {
+            out.append("= ");
+            appendWrapped(out, fixedValue, ElementModifiers.FIXED_VALUE);
+        }
+        out.append(' ');
+        appendCardinality(out);
+        out.append(' ');
+        appendWrapped(out, description, ElementModifiers.DESCRIPTION);
+        appendConstraints(out, options);
+
+        if (binding != null && options.isShowBindings()) {
+            out.append("\n\t");
+            appendWrapped(out, binding.toString(), ElementModifiers.BINDING);
+        }
+    }
 }
@@ -4,10 +4,11 @@ import org.fhir.uml.generation.uml.types.ElementVisability;
 import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.r4.model.*;
 
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A non-static factory that knows how to create Elements and optionally
@@ -16,6 +17,8 @@ import java.util.Map;
 public class ElementFactory {
     private final Map<String, String> fixedValues;
     private Map<String, Constraint> constraints;
+    // Constraints such as ele-1 repeat on almost every element; keep one instance per distinct value
+    private final Map<Constraint, Constraint> constraintPool = new ConcurrentHashMap<>();
 
     /**
      * Конструктор, сохраняющий ссылку на Map для фиксированных значений
@@ -31,13 +34,28 @@ public class ElementFactory {
      * при необходимости вызывая parseFixedValues для заполнения Map и snapshot.
      */
     public Element fromElementDefinition(ElementDefinition elementDefinition) {
+        String id = elementDefinition.getId();
+        boolean hasFixedValue = fixedValues.containsKey(id);
+        String fixedValue = hasFixedValue ? fixedValues.remove(id) : "";
+
+        Element element = fromElementDefinition(elementDefinition, hasFixedValue, fixedValue);
+        registerConstraints(element);
+        return element;
+    }
+
+    /**
+     * Converts an ElementDefinition with a fixed value the caller has already claimed.
+     * Neither the fixed value map nor the constraint map is touched, so different
+     * definitions can be converted concurrently; call {@link #registerConstraints(Element)}
+     * afterwards in document order.
+     */
+    public Element fromElementDefinition(ElementDefinition elementDefinition, boolean hasFixedValue, String fixedValue) {
         Element.Builder elementBuilder = new Element.Builder();
         String path = elementDefinition.getPath();
         String id = elementDefinition.getId();
 
         // Extract name from element ID.
-        String[] idParts = id.split("\\.|:");
-        String extractedName = (idParts.length == 0) ? null : idParts[idParts.length - 1];
+        String extractedName = ElementPath.of(id).getName();
 
         // Cardinality
         Cardinality extractedCardinality = new Cardinality(
@@ -56,12 +74,7 @@ public class ElementFactory {
         ElementVisability visibility = determineVisibility(extractedType);
 
         // Fixed values handling
-        boolean hasFixedValue = false;
-        String fixedValue = "";
-        if (fixedValues.containsKey(id)) {
-            fixedValue = fixedValues.get(id);
-            fixedValues.remove(id);
-            hasFixedValue = true;
+        if (hasFixedValue) {
             visibility = ElementVisability.PROTECTED;
         }
 
@@ -73,11 +86,7 @@ public class ElementFactory {
 
         if (elementDefinition.getConstraint() != null) {
             elementDefinition.getConstraint().forEach(c -> {
-                Constraint constraint = new Constraint(c.getKey(), c.getSeverity().getDisplay(), c.getHuman());
-                elementBuilder.addConstraint(constraint);
-                if (!this.constraints.containsKey(c.getKey())) {
-                    this.constraints.put(c.getKey(), constraint);
-                }
+                elementBuilder.addConstraint(intern(new Constraint(c.getKey(), c.getSeverity().getDisplay(), c.getHuman())));
             });
         }
 
@@ -96,10 +105,48 @@ public class ElementFactory {
                 .build();
     }
 
+    private Constraint intern(Constraint constraint) {
+        Constraint existing = constraintPool.putIfAbsent(constraint, constraint);
+        return existing != null ? existing : constraint;
+    }
+
+    /**
+     * Adds the element's constraints to the shared constraint map; the first constraint seen for a key wins.
+     */
+    public void registerConstraints(Element element) {
+        for (Constraint constraint : element.getConstraints()) {
+            constraints.putIfAbsent(constraint.getKey(), constraint);
+        }
+    }
+
     public void defineFixedValues(List<ElementDefinition> copyList, List<ElementDefinition> structureElements) {
+        FixedValueExpansion expansion = startFixedValueExpansion(structureElements);
         for (ElementDefinition ed : copyList) {
+            expansion.expand(ed);
+        }
+    }
+
+    /**
+     * Starts expanding fixed values into {@code structureElements} one element at a time,
+     * so the caller can interleave expansion with its own pass over the list.
+     */
+    public FixedValueExpansion startFixedValueExpansion(List<ElementDefinition> structureElements) {
+        return new FixedValueExpansion(new ElementDefinitionIndex(structureElements));
+    }
+
+    /**
+     * Expansion state for one element list. New element definitions are appended to the end of the list.
+     */
+    public final class FixedValueExpansion {
+        private final ElementDefinitionIndex index;
+
+        private FixedValueExpansion(ElementDefinitionIndex index) {
+            this.index = index;
+        }
+
+        public void expand(ElementDefinition ed) {
             if (ed.hasFixed()) {
-                parseFixedValues(ed.getFixed(), ed.getId(), ed.getPath(), structureElements);
+                parseFixedValues(ed.getFixed(), ed.getId(), ed.getPath(), index);
             }
         }
     }
@@ -109,14 +156,14 @@ public class ElementFactory {
      * а также создаёт и добавляет новые ElementDefinition в snapshotComponent
      * для каждого уровня вложенности.
      */
-    private void parseFixedValues(Type fixedType, String id, String path, List<ElementDefinition> structureElements) {
+    private void parseFixedValues(Type fixedType, String id, String path, ElementDefinitionIndex index) {
         if (fixedType instanceof PrimitiveType) {
-            handlePrimitiveFixedType((PrimitiveType<?>) fixedType, id, path, structureElements);
+            handlePrimitiveFixedType((PrimitiveType<?>) fixedType, id, path, index);
             return;
         }
 
         // Handle complex fixed type
-        addElementDefinitionForFixedType(fixedType, id, path, structureElements);
+        addElementDefinitionForFixedType(fixedType, id, path, index);
 
         // Recursively parse children
         List<Property> children = fixedType.children();
@@ -135,7 +182,7 @@ public class ElementFactory {
                 }
 
                 if (childValue instanceof Type) {
-                    parseFixedValues((Type) childValue,nextId, nextPath, structureElements);
+                    parseFixedValues((Type) childValue,nextId, nextPath, index);
                 }
                 // If childValue is a Resource or something else,
                 // handle accordingly (not typical for fixed, but possible).
@@ -184,7 +231,7 @@ public class ElementFactory {
     /**
      * Handles the case when the fixed type is a primitive.
      */
-    private void handlePrimitiveFixedType(PrimitiveType<?> primitive, String id, String path, List<ElementDefinition> structureElements) {
+    private void handlePrimitiveFixedType(PrimitiveType<?> primitive, String id, String path, ElementDefinitionIndex index) {
         String value = primitive.getValueAsString();
         fixedValues.put(id, value);
 
@@ -194,8 +241,8 @@ public class ElementFactory {
         edPrim.setMax("1");
         edPrim.setFixed(primitive);
 
-        if (getElementByPath(structureElements, path) == null) {
-            structureElements.add(edPrim);
+        if (index.getByPath(path) == null) {
+            index.add(edPrim);
         }
     }
 
@@ -203,14 +250,14 @@ public class ElementFactory {
      * Creates an ElementDefinition for a complex fixed type
      * (non-primitive case).
      */
-    private void addElementDefinitionForFixedType(Type fixedType, String id, String path, List<ElementDefinition> structureElements) {
+    private void addElementDefinitionForFixedType(Type fixedType, String id, String path, ElementDefinitionIndex index) {
         ElementDefinition edParent = newElementDefinition(id, path, fixedType);
         edParent.setMin(1);
         edParent.setMax("1");
         edParent.setFixed(fixedType);
 
-        if (getElementById(structureElements, id) == null) {
-            structureElements.add(edParent);
+        if (index.getById(id) == null) {
+            index.add(edParent);
         }
     }
 
@@ -230,41 +277,59 @@ public class ElementFactory {
         return ed;
     }
 
-    public ElementDefinition getElementByPath(List<ElementDefinition> structureElements, String path) {
-        if (path == null) {
-            return null;
-        } else {
-            Iterator var2 = structureElements.iterator();
-
-            ElementDefinition ed;
-            do {
-                if (!var2.hasNext()) {
-                    return null;
-                }
-
-                ed = (ElementDefinition)var2.next();
-            } while(!path.equals(ed.getPath()) && !(path + "[x]").equals(ed.getPath()));
+    /**
+     * Hash index over the ids and paths of a snapshot/differential element list.
+     * Elements appended through {@link #add} are indexed as they go, so lookups stay
+     * O(1) while fixed values are expanded into the list.
+     * <p>
+     * A lookup for {@code x} also matches an element whose key is {@code x[x]};
+     * when both exist the one that comes first in the list wins.
+     */
+    private static final class ElementDefinitionIndex {
+        private final List<ElementDefinition> elements;
+        private final Map<String, Integer> pathPositions = new HashMap<>();
+        private final Map<String, Integer> idPositions = new HashMap<>();
+
+        ElementDefinitionIndex(List<ElementDefinition> elements) {
+            this.elements = elements;
+            for (int i = 0; i < elements.size(); i++) {
+                register(elements.get(i), i);
+            }
+        }
 
-            return ed;
+        void add(ElementDefinition ed) {
+            elements.add(ed);
+            register(ed, elements.size() - 1);
         }
-    }
 
-    public ElementDefinition getElementById(List<ElementDefinition> structureElements, String id) {
-        if (id == null) {
-            return null;
-        } else {
-            Iterator var2 = structureElements.iterator();
+        ElementDefinition getByPath(String path) {
+            return lookup(pathPositions, path);
+        }
 
-            ElementDefinition ed;
-            do {
-                if (!var2.hasNext()) {
-                    return null;
-                }
+        ElementDefinition getById(String id) {
+            return lookup(idPositions, id);
+        }
 
-                ed = (ElementDefinition)var2.next();
-            } while(!id.equals(ed.getId()) && !(id + "[x]").equals(ed.getId()));
+        private void register(ElementDefinition ed, int position) {
+            if (ed.getPath() != null) {
+                pathPositions.putIfAbsent(ed.getPath(), position);
+            }
+            if (ed.getId() != null) {
+                idPositions.putIfAbsent(ed.getId(), position);
+            }
+        }
 
-            return ed;
+        private ElementDefinition lookup(Map<String, Integer> positions, String key) {
+            if (key == null) {
+                return null;
+            }
+            Integer exact = positions.get(key);
+            Integer choice = positions.get(key + "[x]");
+            if (exact == null && choice == null) {
+                return null;
+            }
+            int position = exact == null ? choice : choice == null ? exact : Math.min(exact, choice);
+            return elements.get(position);
         }
     }
-}
\ No newline at end of file
+}
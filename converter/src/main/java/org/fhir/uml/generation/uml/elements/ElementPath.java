@@ -0,0 +1,166 @@
+package org.fhir.uml.generation.uml.elements;
+
+import com.google.common.collect.MapMaker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable, interned element id such as {@code Patient.identifier:ssn.system}.
+ * <p>
+ * The id is scanned once for its '.' and ':' delimiters. Segments, parent and slice parent
+ * are derived from those positions on first use and cached, so walking up a path does not
+ * split strings or run regular expressions again. Equal ids share one instance, looked up by
+ * the id string, so asking for a known id neither allocates nor scans it.
+ */
+public final class ElementPath {
+
+    // Entries go away once no element refers to their path any more
+    private static final ConcurrentMap<String, ElementPath> INSTANCES = new MapMaker().weakValues().makeMap();
+
+    private final String value;
+    private final int[] delimiters;
+
+    private volatile List<String> segments;
+    private volatile ElementPath parent;
+    private volatile ElementPath sliceParent;
+
+    private ElementPath(String value) {
+        this.value = value;
+
+        int count = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (isDelimiter(value.charAt(i))) {
+                count++;
+            }
+        }
+        this.delimiters = new int[count];
+        int index = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (isDelimiter(value.charAt(i))) {
+                delimiters[index++] = i;
+            }
+        }
+    }
+
+    public static ElementPath of(String value) {
+        ElementPath path = INSTANCES.get(value);
+        if (path != null) {
+            return path;
+        }
+        path = new ElementPath(value);
+        ElementPath existing = INSTANCES.putIfAbsent(value, path);
+        return existing != null ? existing : path;
+    }
+
+    /**
+     * Returns true if the id contains a '.' or ':' delimiter.
+     */
+    public boolean hasParent() {
+        return delimiters.length > 0;
+    }
+
+    /**
+     * Returns the id without its last segment, trimming at the last '.' or ':'.
+     * Example: "Patient.identifier.system" → "Patient.identifier".
+     * An id without delimiters is its own parent.
+     */
+    public ElementPath getParent() {
+        ElementPath result = parent;
+        if (result == null) {
+            result = hasParent() ? of(value.substring(0, delimiters[delimiters.length - 1])) : this;
+            parent = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the id trimmed at its last ':', or this path if it has no slice marker.
+     */
+    public ElementPath getSliceParent() {
+        ElementPath result = sliceParent;
+        if (result == null) {
+            int lastColon = value.lastIndexOf(':');
+            result = lastColon == -1 ? this : of(value.substring(0, lastColon));
+            sliceParent = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the segments between '.' and ':' delimiters, with the same result as
+     * {@code id.split("\\.|:")}: empty trailing segments are dropped.
+     */
+    public List<String> getSegments() {
+        List<String> result = segments;
+        if (result == null) {
+            result = Collections.unmodifiableList(tokenize());
+            segments = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the last segment, or {@code null} if the id has no non-empty segments.
+     */
+    public String getName() {
+        List<String> parts = getSegments();
+        return parts.isEmpty() ? null : parts.get(parts.size() - 1);
+    }
+
+    /**
+     * Returns the second to last segment, or {@code null} if there is none.
+     * Example: "Patient.identifier" → "Patient".
+     */
+    public String getParentName() {
+        List<String> parts = getSegments();
+        if (parts.size() < 2) {
+            return null;
+        }
+        return parts.get(parts.size() - 2);
+    }
+
+    private List<String> tokenize() {
+        if (delimiters.length == 0) {
+            return List.of(value);
+        }
+
+        List<String> parts = new ArrayList<>(delimiters.length + 1);
+        int start = 0;
+        for (int delimiter : delimiters) {
+            parts.add(value.substring(start, delimiter));
+            start = delimiter + 1;
+        }
+        parts.add(value.substring(start));
+
+        // String.split drops trailing empty strings
+        int size = parts.size();
+        while (size > 0 && parts.get(size - 1).isEmpty()) {
+            size--;
+        }
+        return new ArrayList<>(parts.subList(0, size));
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c == '.' || c == ':';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return value.equals(((ElementPath) o).value);
+    }
+
+    @Override
+    public int hashCode() {
+        return value.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
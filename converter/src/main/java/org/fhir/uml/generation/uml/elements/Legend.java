@@ -1,5 +1,7 @@
 package org.fhir.uml.generation.uml.elements;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -37,47 +39,67 @@ public class Legend {
 
     @Override
     public String toString() {
-        // If no groups, return empty string
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeTo(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    public void writeTo(Appendable sb) throws IOException {
+        // If no groups, write nothing
         if (groups.isEmpty()) {
-            return "";
+            return;
         }
 
         // Default positions if not set
         XPosition xPos = (xPosition != null) ? xPosition : XPosition.RIGHT;
         YPosition yPos = (yPosition != null) ? yPosition : YPosition.TOP;
 
-        StringBuilder sb = new StringBuilder();
-        sb.append(String.format("legend %s %s%n",
-                yPos.name().toLowerCase(),
-                xPos.name().toLowerCase()));
+        String lineSeparator = System.lineSeparator();
+        sb.append("legend ")
+                .append(yPos.name().toLowerCase())
+                .append(' ')
+                .append(xPos.name().toLowerCase())
+                .append(lineSeparator);
 
         // For each group, print the group’s title, header, rows
         for (LegendGroup group : groups) {
             // Print group title in PlantUML “= Title” style
             if (group.getTitle() != null && !group.getTitle().isBlank()) {
-                sb.append(String.format("= %s%n%n", group.getTitle()));
+                sb.append("= ").append(group.getTitle()).append(lineSeparator).append(lineSeparator);
             }
 
             // If there is a header, print it in “|= col1 |= col2 |= col3 |” style
             List<String> header = group.getHeader();
             if (header != null && !header.isEmpty()) {
                 sb.append("|= ");
-                sb.append(String.join(" |= ", header));
-                sb.append(" |").append(System.lineSeparator());
+                appendJoined(sb, " |= ", header);
+                sb.append(" |").append(lineSeparator);
             }
 
             // Print each row
             for (List<String> row : group.getRows()) {
                 sb.append("| ");
-                sb.append(String.join(" | ", row));
-                sb.append(" |").append(System.lineSeparator());
+                appendJoined(sb, " | ", row);
+                sb.append(" |").append(lineSeparator);
             }
 
-            sb.append(System.lineSeparator());
+            sb.append(lineSeparator);
         }
 
         sb.append("end legend\n");
-        return sb.toString();
+    }
+
+    private static void appendJoined(Appendable sb, String delimiter, List<String> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                sb.append(delimiter);
+            }
+            sb.append(values.get(i));
+        }
     }
 
     // -- Getters/setters for xPosition and yPosition
@@ -4,6 +4,9 @@ import org.fhir.uml.generation.uml.elements.Cardinality;
 import org.fhir.uml.generation.uml.elements.UMLClass;
 import org.fhir.uml.generation.uml.types.RelationShipType;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 public class Relation {
     private UMLClass from;
     private UMLClass to;
@@ -118,6 +121,20 @@ public class Relation {
 
     @Override
     public String toString() {
-        return String.format("\"%s\" %s \"%s\" \"%s\" : **%s**\n", getFrom().matchTitle(), getType().toArrow(), getCardinality().relationString(), getTo().matchTitle(), getRelationLabel());
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeTo(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    public void writeTo(Appendable out) throws IOException {
+        out.append('"').append(getFrom().matchTitle()).append("\" ")
+                .append(getType().toArrow())
+                .append(" \"").append(getCardinality().relationString()).append("\" \"")
+                .append(getTo().matchTitle())
+                .append("\" : **").append(getRelationLabel()).append("**\n");
     }
 }
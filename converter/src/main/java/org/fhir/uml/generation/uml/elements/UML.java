@@ -1,7 +1,13 @@
 package org.fhir.uml.generation.uml.elements;
 
-import org.fhir.uml.generation.uml.utils.Config;
-
+import org.fhir.uml.generation.uml.utils.ConversionOptions;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -12,17 +18,30 @@ public class UML {
     private final LinkedList<Relation> relations;
     private UMLClass mainClass;
     private Legend legend;
-    private final Config config = Config.getInstance();
+    private final ConversionOptions options;
     private Map<String, Constraint> constraints = new LinkedHashMap<>();
 
+    // Lookup indexes over classes. Buckets are kept in the order the classes were added,
+    // so lookups return the same class a scan over the list would.
+    private final Map<Element, List<UMLClass>> classesByElement = new IdentityHashMap<>();
+    private final Map<String, List<UMLClass>> classesByTitle = new HashMap<>();
+
     public UML() {
+        this(ConversionOptions.DEFAULT);
+    }
+
+    public UML(ConversionOptions options) {
         this.classes = new LinkedList<>();
         this.relations = new LinkedList<>();
+        this.options = options;
     }
 
     public void addClass(UMLClass umlClass) {
         if (umlClass != null) {
+            umlClass.attachTo(this, this.classes.size());
             this.classes.add(umlClass);
+            addToIndex(classesByElement, umlClass.getMainElement(), umlClass);
+            addToIndex(classesByTitle, umlClass.getTitle(), umlClass);
 
             if (umlClass.isMainClass()) {
                 mainClass = umlClass;
@@ -37,21 +56,60 @@ public class UML {
     }
 
     public UMLClass findClassByTitle(String title) {
-        for (UMLClass umlClass : classes) {
-            if (umlClass.getTitle().equals(title)) {
-                return umlClass;
-            }
-        }
-        return null;
+        return findInIndex(classesByTitle, title);
     }
 
     public UMLClass findClassByElement(Element element) {
-        for (UMLClass umlClass : classes) {
-            if (umlClass.getMainElement().equals(element)) {
-                return umlClass;
+        return findInIndex(classesByElement, element);
+    }
+
+    /**
+     * Called by a class of this model after a change that may affect its title.
+     */
+    void titleChanged(UMLClass umlClass, String oldTitle) {
+        removeFromIndex(classesByTitle, oldTitle, umlClass);
+        addToIndex(classesByTitle, umlClass.getTitle(), umlClass);
+    }
+
+    /**
+     * Called by a class of this model after its main element was replaced.
+     */
+    void mainElementChanged(UMLClass umlClass, Element oldMainElement) {
+        removeFromIndex(classesByElement, oldMainElement, umlClass);
+        addToIndex(classesByElement, umlClass.getMainElement(), umlClass);
+    }
+
+    private static <K> void addToIndex(Map<K, List<UMLClass>> index, K key, UMLClass umlClass) {
+        if (key == null) {
+            return;
+        }
+        List<UMLClass> bucket = index.computeIfAbsent(key, k -> new ArrayList<>(1));
+        int i = bucket.size();
+        while (i > 0 && bucket.get(i - 1).getPosition() > umlClass.getPosition()) {
+            i--;
+        }
+        bucket.add(i, umlClass);
+    }
+
+    private static <K> void removeFromIndex(Map<K, List<UMLClass>> index, K key, UMLClass umlClass) {
+        if (key == null) {
+            return;
+        }
+        List<UMLClass> bucket = index.get(key);
+        if (bucket != null) {
+            bucket.remove(umlClass);
+            if (bucket.isEmpty()) {
+                index.remove(key);
             }
         }
-        return null;
+    }
+
+    private static <K> UMLClass findInIndex(Map<K, List<UMLClass>> index, K key) {
+        if (key == null) {
+            return null;
+        }
+        List<UMLClass> bucket = index.get(key);
+        return bucket == null ? null : bucket.get(0);
     }
 
     public UMLClass getMainClass() {
@@ -63,7 +121,7 @@ public class UML {
     }
 
     public List<UMLClass> getClasses() {
-        return this.classes;
+        return Collections.unmodifiableList(this.classes);
     }
 
     public List<Relation> getRelations() {
@@ -78,11 +136,29 @@ public class UML {
         return constraints;
     }
 
+    public ConversionOptions getOptions() {
+        return options;
+    }
+
 
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
+        try {
+            writeTo(sb);
+        } catch (IOException e) {
+            // StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the PlantUML source of the whole diagram to {@code sb} piece by piece,
+     * without building the class, relation or legend texts as separate strings first.
+     */
+    public void writeTo(Appendable sb) throws IOException {
         sb.append("@startuml\n");
         sb.append("hide empty members\n");
         sb.append("skinparam wrapwidth 500\n");
@@ -90,7 +166,7 @@ public class UML {
 
         sb.append("skinparam classStereotypeFontColor black\n");
 
-        if (config.isDifferential()) {
+        if (options.isDifferential()) {
             sb.append("skinparam classAttributeFontColor #808080\n");
         }
 
@@ -149,24 +225,23 @@ public class UML {
         sb.append("\n");
 
         for (UMLClass umlClass : this.classes) {
-            if (config.isHideRemovedObjects() && umlClass.isParentElementIsRemoved()) {
+            if (options.isHideRemovedObjects() && umlClass.isParentElementIsRemoved()) {
                 continue;
             }
-            sb.append(umlClass);
+            umlClass.writeTo(sb);
         }
 
         for (Relation relation : this.relations) {
-            if (config.isHideRemovedObjects() & relation.getCardinality().isRemoved()) {
+            if (options.isHideRemovedObjects() & relation.getCardinality().isRemoved()) {
                 continue;
             }
-            sb.append(relation);
+            relation.writeTo(sb);
         }
 
         if (this.legend != null) {
-            sb.append(this.legend);
+            this.legend.writeTo(sb);
         }
 
         sb.append("@enduml");
-        return sb.toString();
     }
 }
@@ -1,15 +1,16 @@
 package org.fhir.uml.generation.uml.elements;
 
 import org.fhir.uml.generation.uml.types.CustomClassType;
-import org.fhir.uml.generation.uml.utils.Config;
+import org.fhir.uml.generation.uml.utils.ConversionOptions;
 import org.fhir.uml.generation.uml.utils.Utils;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
 public class UMLClass {
     private boolean mainClass;
-    private String title;
     private String type;
     private String name;
     private List<Element> elements;
@@ -17,9 +18,17 @@ public class UMLClass {
     private Element parentElement;
     private CustomClassType customClassType;
     private boolean parentElementIsRemoved;
-    private Config config = Config.getInstance();
+    private final ConversionOptions options;
+
+    // Model this class was added to, and its position there; used to keep the model's lookup indexes current
+    private UML owner;
+    private int position = -1;
 
     public UMLClass(String type, String name, Element mainElement, Element parentElement, boolean parentElementIsRemoved) {
+        this(type, name, mainElement, parentElement, parentElementIsRemoved, ConversionOptions.DEFAULT);
+    }
+
+    public UMLClass(String type, String name, Element mainElement, Element parentElement, boolean parentElementIsRemoved, ConversionOptions options) {
         this.type = type;
         this.name = name;
         this.elements = new ArrayList<>();
@@ -27,6 +36,7 @@ public class UMLClass {
         this.parentElement = parentElement;
         this.mainClass = false;
         this.parentElementIsRemoved = parentElementIsRemoved;
+        this.options = options;
     }
 
     public boolean isParentElementIsRemoved() {
@@ -38,7 +48,9 @@ public class UMLClass {
     }
 
     public void setMainClass(boolean mainClass) {
+        String oldTitle = owner != null ? getTitle() : null;
         this.mainClass = mainClass;
+        notifyTitleChanged(oldTitle);
     }
 
     public List<Element> getElements() {
@@ -66,14 +78,23 @@ public class UMLClass {
     }
 
     public void setMainElement(Element mainElement) {
+        String oldTitle = owner != null ? getTitle() : null;
+        Element oldMainElement = this.mainElement;
         this.mainElement = mainElement;
+        if (owner != null) {
+            owner.mainElementChanged(this, oldMainElement);
+        }
+        notifyTitleChanged(oldTitle);
     }
 
-    public Boolean isSliceHeader() {
+    public boolean isSliceHeader() {
         return this.mainElement.isSliceHeader();
     }
 
-    public Boolean isChoiseOfTypeHeader() {
+    public boolean isChoiseOfTypeHeader() {
+        if (this.mainElement == null) {
+            return false;
+        }
         return this.mainElement.isChoiceOfTypeHeader();
     }
 
@@ -94,11 +115,30 @@ public class UMLClass {
     }
 
     public void setType(String type) {
+        String oldTitle = owner != null ? getTitle() : null;
         this.type = type;
+        notifyTitleChanged(oldTitle);
     }
 
     public void setName(String name) {
+        String oldTitle = owner != null ? getTitle() : null;
         this.name = name;
+        notifyTitleChanged(oldTitle);
+    }
+
+    int getPosition() {
+        return position;
+    }
+
+    void attachTo(UML owner, int position) {
+        this.owner = owner;
+        this.position = position;
+    }
+
+    private void notifyTitleChanged(String oldTitle) {
+        if (owner != null) {
+            owner.titleChanged(this, oldTitle);
+        }
     }
 
     public CustomClassType getCustomClassType() {
@@ -140,7 +180,7 @@ public class UMLClass {
         return sb.toString();
     }
 
-    private Boolean isBackboneUML() {
+    private boolean isBackboneUML() {
         return this.type.contains("BackboneElement");
     }
 
@@ -167,21 +207,8 @@ public class UMLClass {
         return wrapDifferential(title);
     }
 
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        UMLClass umlClass = (UMLClass) o;
-        return title != null && title.equals(umlClass.title);
-    }
-
-    @Override
-    public int hashCode() {
-        return title != null ? title.hashCode() : 0;
-    }
-
     private String wrapDifferential(String value) {
-        if (config.getView().equals("differential")) {
+        if (options.isDifferential()) {
             return "black('" + value + "')";
         }
 
@@ -191,7 +218,15 @@ public class UMLClass {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
+        try {
+            writeTo(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
 
+    public void writeTo(Appendable sb) throws IOException {
         // Start your UML/class-like definition
         sb.append(matchClassType())
                 .append(" \"")
@@ -266,14 +301,20 @@ public class UMLClass {
             }
 
             // Print each element that’s not removed or is choice-of-type
-            groupElements.stream()
-                    .filter(e -> (e.isChoiceOfTypeElement() || !e.isMain()))
-                    .filter(e -> !config.isHideRemovedObjects() || !e.isRemoved())
-                    .forEach(e -> sb.append("\t").append(e).append("\n"));
+            for (Element e : groupElements) {
+                if (!(e.isChoiceOfTypeElement() || !e.isMain())) {
+                    continue;
+                }
+                if (options.isHideRemovedObjects() && e.isRemoved()) {
+                    continue;
+                }
+                sb.append("\t");
+                e.writeTo(sb, options);
+                sb.append("\n");
+            }
         }
 
         sb.append("}\n");
-        return sb.toString();
     }
 }
 
@@ -0,0 +1,18 @@
+package org.fhir.uml.generation.uml.types;
+
+import net.sourceforge.plantuml.FileFormat;
+
+public enum ImageFormat {
+    PNG(FileFormat.PNG),
+    SVG(FileFormat.SVG);
+
+    private final FileFormat fileFormat;
+
+    ImageFormat(FileFormat fileFormat) {
+        this.fileFormat = fileFormat;
+    }
+
+    public FileFormat toFileFormat() {
+        return fileFormat;
+    }
+}
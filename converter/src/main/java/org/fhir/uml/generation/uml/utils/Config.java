@@ -1,16 +1,22 @@
 package org.fhir.uml.generation.uml.utils;
 
 public final class Config {
-    private static Config instance;
 
     // --- Fields (the old AppArguments) ---
     private String mode = "uml";            // default mode
     private String inputFilePath;
     private String outputFilePath;
     private boolean saveTxt = false;
+    private boolean gzip = false;
     private String txtOutputFilePath;
     private boolean showHelp = false;
 
+    // Batch mode
+    private String inputDir;
+    private String outputDir;
+    private String glob;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
     // Example of the newly added fields:
     private String view = "snapshot";       // can be "snapshot" or "differential"
     private boolean hideRemovedObjects = true; // default is true
@@ -18,37 +24,19 @@ public final class Config {
     private boolean showBindings = true;
     private boolean reduceSliceClasses = false;
     private boolean hideLegend = false;
+    private boolean parallelBuild = false;
+    private boolean fastParse = false;
 
-    // --- Private constructor (singleton) ---
     private Config() {
     }
 
     /**
-     * Initialize the Config from the command-line args.
-     * This will set the internal static `instance` and parse the args.
+     * Creates a Config from the command-line args.
      */
-    public static synchronized Config fromArgs(String[] args) {
-        if (instance == null) {
-            instance = new Config();
-            parseArguments(args, instance);
-        } else {
-            // If you prefer to allow re-parsing, you can either:
-            //   1) do nothing, or
-            //   2) parse again and overwrite the fields.
-            // For now, let's do nothing:
-            System.err.println("WARNING: Config has already been initialized; ignoring subsequent calls to fromArgs().");
-        }
-        return instance;
-    }
-
-    /**
-     * Returns the existing Config instance or throws if not initialized.
-     */
-    public static Config getInstance() {
-        if (instance == null) {
-            throw new IllegalStateException("Config not yet initialized. Call Config.fromArgs(...) first.");
-        }
-        return instance;
+    public static Config fromArgs(String[] args) {
+        Config config = new Config();
+        parseArguments(args, config);
+        return config;
     }
 
     /**
@@ -76,6 +64,26 @@ public final class Config {
                         config.outputFilePath = args[++i];
                     }
                     break;
+                case "--input_dir":
+                    if (i + 1 < args.length) {
+                        config.inputDir = args[++i];
+                    }
+                    break;
+                case "--output_dir":
+                    if (i + 1 < args.length) {
+                        config.outputDir = args[++i];
+                    }
+                    break;
+                case "--glob":
+                    if (i + 1 < args.length) {
+                        config.glob = args[++i];
+                    }
+                    break;
+                case "--parallelism":
+                    if (i + 1 < args.length) {
+                        config.parallelism = Math.max(1, Integer.parseInt(args[++i]));
+                    }
+                    break;
                 case "--txt":
                     config.saveTxt = true;
                     if ((i + 1) < args.length && !args[i + 1].startsWith("--")) {
@@ -112,6 +120,21 @@ public final class Config {
                         config.hideLegend = Boolean.parseBoolean(args[++i]);
                     }
                     break;
+                case "--gzip":
+                    if (i + 1 < args.length) {
+                        config.gzip = Boolean.parseBoolean(args[++i]);
+                    }
+                    break;
+                case "--fast_parse":
+                    if (i + 1 < args.length) {
+                        config.fastParse = Boolean.parseBoolean(args[++i]);
+                    }
+                    break;
+                case "--parallel_build":
+                    if (i + 1 < args.length) {
+                        config.parallelBuild = Boolean.parseBoolean(args[++i]);
+                    }
+                    break;
             }
         }
     }
@@ -133,6 +156,10 @@ public final class Config {
         return saveTxt;
     }
 
+    public boolean isGzip() {
+        return gzip;
+    }
+
     public String getTxtOutputFilePath() {
         return txtOutputFilePath;
     }
@@ -141,6 +168,28 @@ public final class Config {
         return showHelp;
     }
 
+    public String getInputDir() {
+        return inputDir;
+    }
+
+    public String getOutputDir() {
+        return outputDir;
+    }
+
+    /**
+     * Returns the batch file pattern, defaulting to the usual input extension of the mode.
+     */
+    public String getGlob() {
+        if (glob != null) {
+            return glob;
+        }
+        return mode.equalsIgnoreCase("fhir") ? "*.txt" : "*.json";
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
     public String getView() {
         return view;
     }
@@ -173,6 +222,30 @@ public final class Config {
         return hideLegend;
     }
 
+    public boolean isParallelBuild() {
+        return parallelBuild;
+    }
+
+    public boolean isFastParse() {
+        return fastParse;
+    }
+
+    /**
+     * Returns the conversion-related part of the arguments as an immutable options value.
+     */
+    public ConversionOptions toConversionOptions() {
+        return new ConversionOptions.Builder()
+                .view(view)
+                .hideRemovedObjects(hideRemovedObjects)
+                .showConstraints(showConstraints)
+                .showBindings(showBindings)
+                .reduceSliceClasses(reduceSliceClasses)
+                .hideLegend(hideLegend)
+                .parallelBuild(parallelBuild)
+                .fastParse(fastParse)
+                .build();
+    }
+
     // If you'd like to do fancy printing:
     public void print() {
         System.out.println("Config:");
@@ -181,10 +254,17 @@ public final class Config {
         System.out.println("  outputFilePath = " + outputFilePath);
         System.out.println("  saveTxt = " + saveTxt);
         System.out.println("  txtOutputFilePath = " + txtOutputFilePath);
+        System.out.println("  gzip = " + gzip);
         System.out.println("  showHelp = " + showHelp);
+        System.out.println("  inputDir = " + inputDir);
+        System.out.println("  outputDir = " + outputDir);
+        System.out.println("  glob = " + getGlob());
+        System.out.println("  parallelism = " + parallelism);
         System.out.println("  view = " + view);
         System.out.println("  hideRemovedObjects = " + hideRemovedObjects);
         System.out.println("  showConstraints = " + showConstraints);
         System.out.println("  showBindings = " + showBindings);
+        System.out.println("  parallelBuild = " + parallelBuild);
+        System.out.println("  fastParse = " + fastParse);
     }
 }
@@ -0,0 +1,130 @@
+package org.fhir.uml.generation.uml.utils;
+
+/**
+ * Immutable options of a single FHIR → UML conversion.
+ * <p>
+ * Every UML model carries its own options, so conversions with different
+ * views or flags can run side by side in the same JVM.
+ */
+public final class ConversionOptions {
+    public static final ConversionOptions DEFAULT = new Builder().build();
+
+    private final String view;
+    private final boolean hideRemovedObjects;
+    private final boolean showConstraints;
+    private final boolean showBindings;
+    private final boolean reduceSliceClasses;
+    private final boolean hideLegend;
+    private final boolean parallelBuild;
+    private final boolean fastParse;
+
+    private ConversionOptions(Builder builder) {
+        this.view = builder.view;
+        this.hideRemovedObjects = builder.hideRemovedObjects;
+        this.showConstraints = builder.showConstraints;
+        this.showBindings = builder.showBindings;
+        this.reduceSliceClasses = builder.reduceSliceClasses;
+        this.hideLegend = builder.hideLegend;
+        this.parallelBuild = builder.parallelBuild;
+        this.fastParse = builder.fastParse;
+    }
+
+    public String getView() {
+        return view;
+    }
+
+    public boolean isDifferential() {
+        return view.equalsIgnoreCase("differential");
+    }
+
+    public boolean isHideRemovedObjects() {
+        return hideRemovedObjects;
+    }
+
+    public boolean isShowConstraints() {
+        return showConstraints;
+    }
+
+    public boolean isShowBindings() {
+        return showBindings;
+    }
+
+    public boolean isReduceSliceClasses() {
+        return reduceSliceClasses;
+    }
+
+    public boolean isHideLegend() {
+        return hideLegend;
+    }
+
+    /**
+     * Whether large StructureDefinitions are converted subtree by subtree on the common fork-join pool.
+     * The diagram is the same either way.
+     */
+    public boolean isParallelBuild() {
+        return parallelBuild;
+    }
+
+    /**
+     * Whether the StructureDefinition JSON is read with the streaming extractor instead of the full
+     * HAPI parser. Input the extractor does not support is still parsed by HAPI.
+     */
+    public boolean isFastParse() {
+        return fastParse;
+    }
+
+    public static class Builder {
+        private String view = "snapshot";
+        private boolean hideRemovedObjects = true;
+        private boolean showConstraints = true;
+        private boolean showBindings = true;
+        private boolean reduceSliceClasses = false;
+        private boolean hideLegend = false;
+        private boolean parallelBuild = false;
+        private boolean fastParse = false;
+
+        public Builder view(String view) {
+            this.view = view;
+            return this;
+        }
+
+        public Builder hideRemovedObjects(boolean hideRemovedObjects) {
+            this.hideRemovedObjects = hideRemovedObjects;
+            return this;
+        }
+
+        public Builder showConstraints(boolean showConstraints) {
+            this.showConstraints = showConstraints;
+            return this;
+        }
+
+        public Builder showBindings(boolean showBindings) {
+            this.showBindings = showBindings;
+            return this;
+        }
+
+        public Builder reduceSliceClasses(boolean reduceSliceClasses) {
+            this.reduceSliceClasses = reduceSliceClasses;
+            return this;
+        }
+
+        public Builder hideLegend(boolean hideLegend) {
+            this.hideLegend = hideLegend;
+            return this;
+        }
+
+        public Builder parallelBuild(boolean parallelBuild) {
+            this.parallelBuild = parallelBuild;
+            return this;
+        }
+
+        public Builder fastParse(boolean fastParse) {
+            this.fastParse = fastParse;
+            return this;
+        }
+
+        public ConversionOptions build() {
+            return new ConversionOptions(this);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.fhir.uml.generation.uml.utils;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import org.hl7.fhir.r4.model.ElementDefinition;
+import org.hl7.fhir.r4.model.StructureDefinition;
+
+/**
+ * Process-wide R4 {@link FhirContext} with reusable JSON parsers.
+ * <p>
+ * The context is built once, on first use, and the model classes the converter reads and
+ * writes are scanned right away, so the first conversion does not pay for reflection.
+ * HAPI parsers are not thread-safe, so each thread gets its own plain and pretty-printing
+ * parser, which it keeps for later conversions.
+ */
+public final class FhirContextHolder {
+
+    private static final FhirContext CONTEXT = createContext();
+
+    private static final ThreadLocal<IParser> JSON_PARSER =
+            ThreadLocal.withInitial(CONTEXT::newJsonParser);
+    private static final ThreadLocal<IParser> PRETTY_JSON_PARSER =
+            ThreadLocal.withInitial(() -> CONTEXT.newJsonParser().setPrettyPrint(true));
+
+    private FhirContextHolder() {
+    }
+
+    public static FhirContext getContext() {
+        return CONTEXT;
+    }
+
+    /**
+     * Returns the calling thread's JSON parser. It must not be passed to other threads or reconfigured.
+     */
+    public static IParser jsonParser() {
+        return JSON_PARSER.get();
+    }
+
+    /**
+     * Returns the calling thread's pretty-printing JSON parser. It must not be passed to other threads or reconfigured.
+     */
+    public static IParser prettyJsonParser() {
+        return PRETTY_JSON_PARSER.get();
+    }
+
+    /**
+     * Builds the context now, for example at application startup, instead of on the first conversion.
+     * The return type stays {@code void} so callers without HAPI on their compile classpath can use it.
+     */
+    public static void warmUp() {
+        // The first call initialises this class, and with it CONTEXT
+    }
+
+    private static FhirContext createContext() {
+        FhirContext ctx = FhirContext.forR4();
+
+        // Scan the resource and datatypes of both directions up front
+        ctx.getResourceDefinition(StructureDefinition.class);
+        ctx.getElementDefinition(ElementDefinition.class);
+        for (String primitive : new String[]{"string", "code", "uri", "url", "canonical", "boolean", "integer", "decimal"}) {
+            ctx.getElementDefinition(primitive);
+        }
+
+        // A parse/encode round trip loads the JSON parser and its reflection caches
+        IParser parser = ctx.newJsonParser();
+        parser.encodeResourceToString(parser.parseResource(StructureDefinition.class,
+                "{\"resourceType\":\"StructureDefinition\",\"snapshot\":{\"element\":[{\"id\":\"Resource\",\"path\":\"Resource\",\"min\":0,\"max\":\"*\"}]}}"));
+        return ctx;
+    }
+}
@@ -1,22 +1,34 @@
 package org.fhir.uml.generation.uml.utils;
 
+import net.sourceforge.plantuml.FileFormatOption;
 import net.sourceforge.plantuml.SourceStringReader;
+import org.fhir.uml.generation.uml.elements.ElementPath;
 import org.fhir.uml.generation.uml.elements.UML;
+import org.fhir.uml.generation.uml.types.ImageFormat;
 
 import java.io.*;
 import java.util.*;
 
 public class Utils {
     public static void generateUMLDiagram(UML uml, String outputFilePath) throws IOException {
-        SourceStringReader reader = new SourceStringReader(uml.toString());
         try (OutputStream png = new FileOutputStream(outputFilePath)) {
-           reader.outputImage(png);
+            generateUMLDiagram(uml, png);
         }
     }
 
+    public static void generateUMLDiagram(UML uml, OutputStream outputStream) throws IOException {
+        generateUMLDiagram(uml, outputStream, ImageFormat.PNG);
+    }
+
+    public static void generateUMLDiagram(UML uml, OutputStream outputStream, ImageFormat imageFormat) throws IOException {
+        // PlantUML only accepts the source as one String; it is rendered into a single buffer
+        SourceStringReader reader = new SourceStringReader(uml.toString());
+        reader.outputImage(outputStream, new FileFormatOption(imageFormat.toFileFormat()));
+    }
+
     public static void saveUMLAsText(UML uml, String outputFilePath) throws IOException {
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFilePath))) {
-            writer.write(uml.toString());
+            uml.writeTo(writer);
         }
     }
 
@@ -25,13 +37,9 @@ public class Utils {
     }
 
     public static String detectRemovedPathPart(String oldPath, String newPath) {
-        // Split old and new strings by "." or ":"
-        String[] oldTokens = oldPath.split("\\.|:");
-        String[] newTokens = newPath.split("\\.|:");
-
-        // Convert arrays to sets
-        Set<String> oldSet = new HashSet<>(Arrays.asList(oldTokens));
-        Set<String> newSet = new HashSet<>(Arrays.asList(newTokens));
+        // Segments of the old and new ids, split by "." or ":"
+        Set<String> oldSet = new HashSet<>(ElementPath.of(oldPath).getSegments());
+        Set<String> newSet = new HashSet<>(ElementPath.of(newPath).getSegments());
 
         // Find tokens in oldPath that are not in newPath
         oldSet.removeAll(newSet);
@@ -0,0 +1,327 @@
+package org.fhir.uml.generation.uml;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the single-sweep parser of {@link FHIRGenerator} against the regex pipeline it replaced.
+ * <p>
+ * {@link RegexPipeline} keeps the old patterns and the old way of applying them: a multiline class
+ * regex over the whole text, the body of each class split into lines, and a relation regex over the
+ * whole text. Both parsers are reduced to the same description of classes, fields and relations.
+ * <p>
+ * The inputs stay within what the generator writes: class headers and relations on one line, LF or
+ * CRLF line endings. A header split over several lines was accepted by the old patterns and is no
+ * longer, see {@link #classHeaderSplitOverLinesIsNoLongerRecognised()}.
+ */
+public class FHIRGeneratorScanTest {
+
+    private static final int RANDOM_DOCUMENTS = 20_000;
+
+    @Test
+    public void lfAndCrlfLineEndingsParseAlike() throws IOException {
+        String document = String.join("\n",
+                "@startuml",
+                "class \"Patient (Patient)\" {",
+                "  {field} + identifier : Identifier [0..*]",
+                "  --Slices--",
+                "  {field} + ssn : Identifier [0..1]",
+                "  **Binding**: Gender{required}: //http://hl7.org/fhir/ValueSet/administrative-gender//",
+                "}",
+                "class \"Identifier\" <<(S,#FF7700) Slices>> {",
+                "  {field} + system : uri = **http://example.org** [1..1]",
+                "}",
+                "\"Patient (Patient)\" --> \"0..*\" \"Identifier\" : **identifier**",
+                "@enduml",
+                "");
+
+        assertSameParse(document);
+        assertSameParse(document.replace("\n", "\r\n"));
+        assertEquals(describe(document), describe(document.replace("\n", "\r\n")));
+    }
+
+    @Test
+    public void unterminatedClassIsDropped() throws IOException {
+        String document = String.join("\n",
+                "class \"Patient (Patient)\" {",
+                "  {field} + name : HumanName [0..*]",
+                "}",
+                "class \"Name\" {",
+                "  {field} + family : string [0..1]",
+                "class \"Contact\" {",
+                "  {field} + telecom : ContactPoint [0..*]",
+                "\"Patient (Patient)\" --> \"0..*\" \"Name\" : **name**");
+
+        assertSameParse(document);
+        assertEquals(String.join("\n",
+                "class Patient (Patient) null",
+                "  field + name HumanName  null 0..* false",
+                "relation Patient (Patient) --> 0..* Name name",
+                ""), describe(document));
+    }
+
+    @Test
+    public void relationLinesInsideClassBodiesCount() throws IOException {
+        String document = String.join("\r\n",
+                "class \"Patient (Patient)\" {",
+                "  {field} + name : HumanName [0..*]",
+                "\"Patient (Patient)\" --> \"0..*\" \"Name\" : **name**",
+                "}",
+                "class \"Name\" {",
+                "  {field} + family : string [0..1]",
+                "}",
+                "");
+
+        assertSameParse(document);
+        assertEquals(String.join("\n",
+                "class Patient (Patient) null",
+                "  field + name HumanName  null 0..* false",
+                "class Name null",
+                "  field + family string  null 0..1 false",
+                "relation Patient (Patient) --> 0..* Name name",
+                ""), describe(document));
+    }
+
+    @Test
+    public void randomDocumentsParseLikeTheRegexPipeline() throws IOException {
+        Random random = new Random(21);
+        for (int i = 0; i < RANDOM_DOCUMENTS; i++) {
+            assertSameParse(randomDocument(random));
+        }
+    }
+
+    @Test
+    public void classHeaderSplitOverLinesIsNoLongerRecognised() throws IOException {
+        String document = String.join("\n",
+                "class \"Patient (Patient)\"",
+                "{",
+                "  {field} + name : HumanName [0..*]",
+                "}",
+                "");
+
+        assertEquals(String.join("\n",
+                "class Patient (Patient) null",
+                "  field + name HumanName  null 0..* false",
+                ""), RegexPipeline.describe(document));
+        assertEquals("", describe(document));
+    }
+
+    // -------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------
+
+    private static void assertSameParse(String document) throws IOException {
+        assertEquals(document, RegexPipeline.describe(document), describe(document));
+    }
+
+    /**
+     * Describes what the current parser reads from the document.
+     */
+    private static String describe(String document) throws IOException {
+        FHIRGenerator generator = new FHIRGenerator();
+        List<FHIRGenerator.ClassBlock> blocks = new ArrayList<>();
+        List<String> relationCandidates = new ArrayList<>();
+        generator.scan(new StringReader(document), blocks, relationCandidates);
+
+        StringBuilder description = new StringBuilder();
+        for (FHIRGenerator.ClassBlock block : blocks) {
+            FHIRGenerator.ParsedClass parsedClass = generator.parseClassBlock(block);
+            describeClass(description, parsedClass.umlClassName, parsedClass.customClassType);
+            for (FHIRGenerator.FieldLine field : parsedClass.fields) {
+                describeField(description, field.visibility, field.name, field.type, field.fixedValue, field.cardinality, field.isSlice);
+            }
+        }
+        for (String candidate : relationCandidates) {
+            FHIRGenerator.RelationLine relation = generator.parseRelationLine(candidate);
+            if (relation != null) {
+                describeRelation(description, relation.from, relation.arrowType, relation.cardinality, relation.to, relation.fromElementName);
+            }
+        }
+        return description.toString();
+    }
+
+    private static void describeClass(StringBuilder description, String name, String customClassType) {
+        description.append("class ").append(name).append(' ').append(customClassType).append('\n');
+    }
+
+    private static void describeField(StringBuilder description, String visibility, String name, String type,
+                                      String fixedValue, String cardinality, boolean isSlice) {
+        description.append("  field ").append(visibility).append(' ').append(name).append(' ').append(type)
+                .append(' ').append(fixedValue).append(' ').append(cardinality).append(' ').append(isSlice).append('\n');
+    }
+
+    private static void describeRelation(StringBuilder description, String from, String arrow, String cardinality,
+                                         String to, String label) {
+        description.append("relation ").append(from).append(' ').append(arrow).append(' ').append(cardinality)
+                .append(' ').append(to).append(' ').append(label).append('\n');
+    }
+
+    // -------------------------------------------------------------------------
+    // Random documents
+    // -------------------------------------------------------------------------
+
+    private static final String[] CLASS_NAMES = {"Patient (Patient)", "Identifier", "Slices for identifier", "Name", "Extension"};
+    private static final String[] FIELD_NAMES = {"identifier", "name", "ssn", "value[x]", "url"};
+    private static final String[] TYPES = {"Identifier", "string", "Reference(Patient | Group)", "CodeableConcept "};
+
+    private static String randomDocument(Random random) {
+        List<String> lines = new ArrayList<>();
+        int classes = random.nextInt(5);
+        for (int c = 0; c < classes; c++) {
+            lines.add(randomHeader(random));
+            int bodyLines = random.nextInt(6);
+            for (int b = 0; b < bodyLines; b++) {
+                lines.add(randomBodyLine(random));
+            }
+            // Sometimes the class is left open, or its closing line is not a closing line
+            switch (random.nextInt(8)) {
+                case 0 -> {
+                }
+                case 1 -> lines.add(pick(random, "} x", " }", "}}", "};"));
+                case 2 -> lines.add(pick(random, "}  ", "}\t"));
+                default -> lines.add("}");
+            }
+            if (random.nextInt(3) == 0) {
+                lines.add(randomOutsideLine(random));
+            }
+        }
+        int relations = random.nextInt(4);
+        for (int r = 0; r < relations; r++) {
+            lines.add(randomRelation(random));
+        }
+
+        StringBuilder document = new StringBuilder();
+        for (String line : lines) {
+            document.append(line).append(random.nextInt(3) == 0 ? "\r\n" : "\n");
+        }
+        if (random.nextBoolean() && document.length() > 0) {
+            // No line break after the last line
+            document.setLength(document.length() - (document.charAt(document.length() - 2) == '\r' ? 2 : 1));
+        }
+        return document.toString();
+    }
+
+    private static String randomHeader(Random random) {
+        String keyword = pick(random, "class", "class", "struct", "abstract class");
+        String stereotype = switch (random.nextInt(4)) {
+            case 0 -> " <<(S,#FF7700) Slices>>";
+            case 1 -> " <<(E,#88AA00) Extension>>";
+            default -> "";
+        };
+        String rest = random.nextInt(6) == 0 ? " " + randomField(random) : "";
+        return keyword + " \"" + pick(random, CLASS_NAMES) + "\"" + stereotype + pick(random, " {", "{", "  {") + rest;
+    }
+
+    private static String randomBodyLine(Random random) {
+        return switch (random.nextInt(9)) {
+            case 0 -> pick(random, "  --Slices--", "--Slices--", "  --Other--", "  -- Slices --");
+            case 1 -> "  **Binding**: " + pick(random, "Gender{required}: //http://hl7.org/fhir/ValueSet/gender//", "broken");
+            case 2 -> randomRelation(random);
+            case 3 -> pick(random, "", "   ", "  ' note", "  {field} broken", "\t{field} + name : string");
+            case 4 -> randomHeader(random);
+            default -> randomField(random);
+        };
+    }
+
+    private static String randomField(Random random) {
+        String fixedValue = random.nextInt(4) == 0 ? " = **" + pick(random, "http://example.org", "final") + "**" : "";
+        String cardinality = switch (random.nextInt(5)) {
+            case 0 -> "";
+            case 1 -> " [" + pick(random, "", "1", "0..0") + "]";
+            default -> " [" + pick(random, "0..1", "0..*", "1..1") + "]";
+        };
+        String stereotype = random.nextInt(6) == 0 ? " <<MS>>" : "";
+        return pick(random, "  ", "", "\t") + "{" + pick(random, "field", "", "method") + "} "
+                + pick(random, "+", "-", "#", "~") + " " + pick(random, FIELD_NAMES) + pick(random, " : ", ":", " :  ")
+                + pick(random, TYPES) + fixedValue + cardinality + stereotype + pick(random, "", " ", "\t");
+    }
+
+    private static String randomRelation(Random random) {
+        String label = random.nextInt(5) == 0 ? ": " + pick(random, FIELD_NAMES) : ": **" + pick(random, FIELD_NAMES) + "**";
+        return "\"" + pick(random, CLASS_NAMES) + "\" " + pick(random, "-->", "--", "*--", "..>") + " \""
+                + pick(random, "0..1", "0..*", "1..1") + "\" \"" + pick(random, CLASS_NAMES) + "\" " + label
+                + pick(random, "", " ");
+    }
+
+    private static String randomOutsideLine(Random random) {
+        return pick(random, "", "@startuml", "@enduml", "' comment", "skinparam classAttributeIconSize 0",
+                "}", "  {field} + stray : string [0..1]", "hide empty members");
+    }
+
+    @SafeVarargs
+    private static <T> T pick(Random random, T... values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    // -------------------------------------------------------------------------
+    // Oracle
+    // -------------------------------------------------------------------------
+
+    /**
+     * The regex pipeline FHIRGenerator used before the single-sweep parser, reduced to what it read.
+     */
+    private static final class RegexPipeline {
+        private static final Pattern CLASS_PATTERN = Pattern.compile(
+                "(?sm)(class|struct)\\s+\"([^\"]+)\"\\s*(<<.*?>>)?\\s*\\{([\\s\\S]*?)(?=^[}]\\s*$)",
+                Pattern.MULTILINE
+        );
+
+        private static final Pattern FIELD_PATTERN = Pattern.compile(
+                "(?m)^\\s*\\{([^}]*)}\\s+([+\\-~#])\\s+([^:\\s]+)\\s*:\\s*([^\\[=\\n]+)" +
+                        "(?:\\s*=\\s*\\*\\*([^*]+)\\*\\*)?" +
+                        "(?:\\s*\\[([^]]*)])?" +
+                        "(?:\\s*<<([^>]+)>>)?\\s*$"
+        );
+
+        private static final Pattern BINDING_PATTERN = Pattern.compile(
+                "(?m)^\\s*\\*\\*Binding\\*\\*:\\s*([^{]+)\\{([^}]+)}:\\s*//(.*?)//\\s*$"
+        );
+
+        private static final Pattern RELATION_PATTERN = Pattern.compile(
+                "(?m)^\"([^\"]+)\"\\s*(--\\S+)\\s*\"([^\"]+)\"\\s*\"([^\"]+)\"\\s*:\\s*\\*\\*([^*]+)\\*\\*\\s*$"
+        );
+
+        private static final Pattern CLASS_GROUP_PATTERN = Pattern.compile("(?m)^\\s*--(.*?)--\\s*$");
+
+        static String describe(String document) {
+            StringBuilder description = new StringBuilder();
+
+            Matcher classMatcher = CLASS_PATTERN.matcher(document);
+            while (classMatcher.find()) {
+                describeClass(description, classMatcher.group(2), classMatcher.group(3));
+
+                boolean nextElementsAreSlices = false;
+                for (String line : classMatcher.group(4).split("\\r?\\n")) {
+                    Matcher fieldMatcher = FIELD_PATTERN.matcher(line);
+                    Matcher bindingMatcher = BINDING_PATTERN.matcher(line);
+                    Matcher groupMatcher = CLASS_GROUP_PATTERN.matcher(line);
+
+                    if (fieldMatcher.matches()) {
+                        describeField(description, fieldMatcher.group(2), fieldMatcher.group(3), fieldMatcher.group(4),
+                                fieldMatcher.group(5), fieldMatcher.group(6), nextElementsAreSlices);
+                    } else if (bindingMatcher.matches()) {
+                        // Bindings were not read
+                    } else if (groupMatcher.matches() && "Slices".equals(groupMatcher.group(1))) {
+                        nextElementsAreSlices = true;
+                    }
+                }
+            }
+
+            Matcher relationMatcher = RELATION_PATTERN.matcher(document);
+            while (relationMatcher.find()) {
+                describeRelation(description, relationMatcher.group(1), relationMatcher.group(2), relationMatcher.group(3),
+                        relationMatcher.group(4), relationMatcher.group(5));
+            }
+            return description.toString();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.fhir.uml.generation.uml;
+
+import org.hl7.fhir.r4.model.ElementDefinition;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures what one edit costs a {@link FHIRParseSession} as the diagram grows, next to parsing
+ * the whole text again with {@link FHIRGenerator#parseUMLFile(String)}.
+ * <p>
+ * Each diagram has a main class with one field per child class. Every edit changes a field of
+ * the child in the middle of the document. Timings are printed rather than asserted, because they
+ * depend on the machine; the work the session skips is asserted through its counters.
+ */
+public class FHIRParseSessionEditCostTest {
+
+    private static final int[] CHILD_CLASSES = {50, 200, 800, 3200};
+    private static final int WARMUP_EDITS = 10;
+    private static final int MEASURED_EDITS = 20;
+
+    @Test
+    public void reportsPerEditCostAgainstDiagramSize() {
+        System.out.println("classes | session update (us/edit) | full parse (us/edit)");
+        for (int children : CHILD_CLASSES) {
+            FHIRParseSession session = new FHIRParseSession();
+            FHIRGenerator generator = new FHIRGenerator();
+            session.update(diagram(children, 0));
+
+            for (int edit = 1; edit <= WARMUP_EDITS; edit++) {
+                String uml = diagram(children, edit);
+                assertSameElements(generator.parseUMLFile(uml), session.update(uml));
+                // Only the edited class is parsed again and given new element ids
+                assertEquals(1, session.getReparsedCount());
+                assertEquals(1, session.getRelinkedCount());
+            }
+
+            List<String> edits = new ArrayList<>(MEASURED_EDITS);
+            for (int edit = 1; edit <= MEASURED_EDITS; edit++) {
+                edits.add(diagram(children, WARMUP_EDITS + edit));
+            }
+
+            long start = System.nanoTime();
+            for (String uml : edits) {
+                session.update(uml);
+            }
+            long sessionNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (String uml : edits) {
+                generator.parseUMLFile(uml);
+            }
+            long parseNanos = System.nanoTime() - start;
+
+            System.out.printf("%7d | %24.1f | %20.1f%n", children + 1,
+                    sessionNanos / 1000.0 / MEASURED_EDITS, parseNanos / 1000.0 / MEASURED_EDITS);
+        }
+    }
+
+    /**
+     * Builds the diagram for the given edit; edits differ in the cardinality of one field of the middle child class.
+     */
+    private static String diagram(int children, int edit) {
+        StringBuilder uml = new StringBuilder("@startuml\n");
+        uml.append("class \"Patient(Patient)\" {\n");
+        for (int i = 0; i < children; i++) {
+            uml.append("  {field} + part").append(i).append(" : BackboneElement [0..1]\n");
+        }
+        uml.append("}\n");
+
+        for (int i = 0; i < children; i++) {
+            uml.append("class \"Part").append(i).append("\" {\n");
+            uml.append("  {field} + code : CodeableConcept [1..1]\n");
+            uml.append("  {field} + value : string [0..").append(i == children / 2 ? edit + 1 : 1).append("]\n");
+            uml.append("  {field} + note : Annotation [0..*]\n");
+            uml.append("}\n");
+        }
+
+        for (int i = 0; i < children; i++) {
+            uml.append("\"Patient (Patient)\" --> \"0..1\" \"Part").append(i).append("\" : **part").append(i).append("**\n");
+        }
+        return uml.append("@enduml\n").toString();
+    }
+
+    private static void assertSameElements(StructureDefinition expected, StructureDefinition actual) {
+        List<ElementDefinition> expectedElements = expected.getSnapshot().getElement();
+        List<ElementDefinition> actualElements = actual.getSnapshot().getElement();
+        assertEquals(expectedElements.size(), actualElements.size());
+        for (int i = 0; i < expectedElements.size(); i++) {
+            assertEquals(describe(expectedElements.get(i)), describe(actualElements.get(i)));
+        }
+    }
+
+    private static String describe(ElementDefinition element) {
+        StringBuilder description = new StringBuilder()
+                .append(element.getId()).append(' ')
+                .append(element.getPath()).append(' ')
+                .append(element.getMin()).append("..").append(element.getMax());
+        for (ElementDefinition.TypeRefComponent type : element.getType()) {
+            description.append(' ').append(type.getCode());
+        }
+        return description.toString();
+    }
+}
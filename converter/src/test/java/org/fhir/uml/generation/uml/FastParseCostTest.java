@@ -0,0 +1,117 @@
+package org.fhir.uml.generation.uml;
+
+import org.fhir.uml.generation.uml.utils.ConversionOptions;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures what {@link ConversionOptions#isFastParse()} costs against the HAPI parser when
+ * converting the largest example profile from a Reader, both when the fast path takes the input
+ * and when it falls back half-way or at the very end of the file.
+ * <p>
+ * Timings are printed rather than asserted, because they depend on the machine. Allocations are
+ * asserted: the fast path must allocate a fraction of what the HAPI parse does, and a fallback
+ * may only add about what it takes to keep the text read so far.
+ */
+public class FastParseCostTest {
+
+    private static final String PROFILE = "examples/explanationofbenefit.profile.json";
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 20;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final UMLGenerator generator = new UMLGenerator();
+
+    @Test
+    public void reportsFastParseCostAgainstTheHapiParser() throws Exception {
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        String json = Files.readString(Paths.get(PROFILE));
+        long hapiBytes = 0;
+
+        System.out.println("input            | fastParse=false (ms, MB) | fastParse=true (ms, MB)");
+        for (String input : new String[]{"supported", "fallback, middle", "fallback, end"}) {
+            String text = switch (input) {
+                case "supported" -> json;
+                case "fallback, middle" -> withUnsupportedField(json, json.length() / 2);
+                default -> withUnsupportedField(json, json.lastIndexOf("\"path\""));
+            };
+            Cost[] costs = measure(text);
+            Cost hapi = costs[0];
+            Cost fast = costs[1];
+            System.out.printf("%-16s | %11.1f, %10.1f | %10.1f, %10.1f%n", input,
+                    hapi.millis, hapi.bytes / 1e6, fast.millis, fast.bytes / 1e6);
+
+            if (input.equals("supported")) {
+                hapiBytes = hapi.bytes;
+                assertTrue(String.format("fast path allocated %d bytes, HAPI %d", fast.bytes, hapi.bytes),
+                        fast.bytes < hapi.bytes / 4);
+            } else {
+                // The text read so far is kept as chars; the extractor itself allocates little next to it
+                long budget = hapiBytes + 4L * text.length();
+                assertTrue(String.format("fallback allocated %d bytes, budget %d", fast.bytes, budget),
+                        fast.bytes <= budget);
+            }
+        }
+    }
+
+    /**
+     * Converts the text with and without the fast path in alternation, and returns the median time
+     * and the mean allocation of each.
+     */
+    private Cost[] measure(String text) throws Exception {
+        ConversionOptions hapiOptions = new ConversionOptions.Builder().fastParse(false).build();
+        ConversionOptions fastOptions = new ConversionOptions.Builder().fastParse(true).build();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            generator.generate(new StringReader(text), hapiOptions);
+            generator.generate(new StringReader(text), fastOptions);
+        }
+
+        long[][] nanos = new long[2][MEASURED_ROUNDS];
+        long[] bytes = new long[2];
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            for (int path = 0; path < 2; path++) {
+                ConversionOptions options = path == 0 ? hapiOptions : fastOptions;
+                long threadId = Thread.currentThread().threadId();
+                long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+                long start = System.nanoTime();
+                generator.generate(new StringReader(text), options);
+                nanos[path][round] = System.nanoTime() - start;
+                bytes[path] += threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            }
+        }
+
+        Cost[] costs = new Cost[2];
+        for (int path = 0; path < 2; path++) {
+            Arrays.sort(nanos[path]);
+            costs[path] = new Cost(nanos[path][MEASURED_ROUNDS / 2] / 1e6, bytes[path] / MEASURED_ROUNDS);
+        }
+        return costs;
+    }
+
+    // Puts an extension on the path of the element at or after the given offset, which the fast path does not read
+    private static String withUnsupportedField(String json, int from) {
+        int path = json.indexOf("\"path\"", from);
+        return json.substring(0, path) + "\"_path\": {\"id\": \"p\"}, " + json.substring(path);
+    }
+
+    private static final class Cost {
+        final double millis;
+        final long bytes;
+
+        Cost(double millis, long bytes) {
+            this.millis = millis;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.fhir.uml.generation.uml;
+
+import org.fhir.uml.generation.uml.utils.ConversionOptions;
+import org.fhir.uml.generation.uml.utils.FhirContextHolder;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.junit.Test;
+
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the parallel model build renders the same diagram as the sequential one.
+ * The threshold is lowered to one element, so every profile takes the parallel path.
+ */
+public class ParallelBuildTest {
+
+    private static final String[] PROFILES = {
+            "examples/explanationofbenefit.profile.json",
+            "examples/claim.profile.json",
+            "examples/5.json"
+    };
+
+    @Test
+    public void parallelBuildRendersTheSameDiagram() throws Exception {
+        UMLGenerator generator = new UMLGenerator();
+        for (String profile : PROFILES) {
+            for (String view : new String[]{"snapshot", "differential"}) {
+                for (boolean reduceSliceClasses : new boolean[]{false, true}) {
+                    ConversionOptions.Builder options = new ConversionOptions.Builder()
+                            .view(view)
+                            .reduceSliceClasses(reduceSliceClasses);
+
+                    String sequential = generator.generate(parse(profile),
+                            options.parallelBuild(false).build(), Integer.MAX_VALUE).toString();
+                    String parallel = generator.generate(parse(profile),
+                            options.parallelBuild(true).build(), 1).toString();
+
+                    assertEquals(profile + ", " + view + ", reduceSliceClasses=" + reduceSliceClasses,
+                            sequential, parallel);
+                }
+            }
+        }
+    }
+
+    // Building a view expands fixed values into the element lists, so every build gets its own copy
+    private static StructureDefinition parse(String profile) throws Exception {
+        try (Reader reader = Files.newBufferedReader(Paths.get(profile))) {
+            return FhirContextHolder.jsonParser().parseResource(StructureDefinition.class, reader);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.fhir.uml.generation.uml;
+
+import org.fhir.uml.generation.uml.elements.UML;
+import org.fhir.uml.generation.uml.utils.ConversionOptions;
+import org.fhir.uml.generation.uml.utils.FhirContextHolder;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the streaming extractor gives the same diagrams as the HAPI parser, both from a
+ * String and from a Reader, and that it hands input it does not support back to HAPI.
+ */
+public class StructureDefinitionExtractorTest {
+
+    private static final String[] VIEWS = {"snapshot", "differential"};
+
+    private final StructureDefinitionExtractor extractor = new StructureDefinitionExtractor(FhirContextHolder.getContext());
+
+    @Test
+    public void everyExampleRendersLikeTheHapiParser() throws Exception {
+        UMLGenerator generator = new UMLGenerator();
+        int extracted = 0;
+        List<Path> examples = examples();
+        for (Path example : examples) {
+            String json = Files.readString(example);
+            if (extractor.tryExtract(json) != null) {
+                extracted++;
+            }
+            for (String view : VIEWS) {
+                String expected = render(generator, json, view, false, false);
+                assertEquals(example + ", " + view, expected, render(generator, json, view, true, false));
+                assertEquals(example + ", " + view + ", from a reader", expected, render(generator, json, view, true, true));
+            }
+        }
+        // Nearly every example takes the fast path, so the comparison above is not all fallbacks
+        assertTrue(extracted + " of " + examples.size() + " examples extracted", extracted > examples.size() * 9 / 10);
+    }
+
+    @Test
+    public void fallbackFromAReaderRendersLikeTheHapiParser() throws Exception {
+        // The unsupported field sits mid-file, so HAPI reads part of the input again and the rest from the stream
+        String json = Files.readString(Paths.get("examples/explanationofbenefit.profile.json"));
+        int middle = json.indexOf("\"path\"", json.length() / 2);
+        String fallback = json.substring(0, middle) + "\"_path\": {\"id\": \"p\"}, " + json.substring(middle);
+        assertNull(extractor.tryExtract(fallback));
+
+        UMLGenerator generator = new UMLGenerator();
+        for (String view : VIEWS) {
+            assertEquals(view, render(generator, fallback, view, false, true), render(generator, fallback, view, true, true));
+        }
+    }
+
+    @Test
+    public void extensionOnTypeProfileFallsBack() throws Exception {
+        assertNull(extractor.tryExtract(structureDefinition(
+                "{\"id\": \"Patient.meta\", \"path\": \"Patient.meta\", \"type\": [{\"code\": \"Meta\","
+                        + " \"profile\": [\"http://example.org/Meta\"], \"_profile\": [{\"extension\": []}]}]}")));
+    }
+
+    @Test
+    public void complexFixedValueFallsBack() throws Exception {
+        assertNull(extractor.tryExtract(structureDefinition(
+                "{\"id\": \"Patient.identifier\", \"path\": \"Patient.identifier\","
+                        + " \"fixedIdentifier\": {\"system\": \"http://example.org\"}}")));
+    }
+
+    @Test
+    public void bindingWithOnlyExtensionsFallsBack() throws Exception {
+        assertNull(extractor.tryExtract(structureDefinition(
+                "{\"id\": \"Patient.gender\", \"path\": \"Patient.gender\", \"binding\": {\"extension\":"
+                        + " [{\"url\": \"http://hl7.org/fhir/StructureDefinition/elementdefinition-bindingName\","
+                        + " \"valueString\": \"Gender\"}]}}")));
+    }
+
+    @Test
+    public void unknownConstraintSeverityFallsBack() throws Exception {
+        assertNull(extractor.tryExtract(structureDefinition(
+                "{\"id\": \"Patient\", \"path\": \"Patient\", \"constraint\": [{\"key\": \"pat-1\","
+                        + " \"severity\": \"fatal\", \"human\": \"Always wrong\"}]}")));
+    }
+
+    @Test
+    public void supportedElementIsExtracted() throws Exception {
+        assertNotNull(extractor.tryExtract(structureDefinition(
+                "{\"id\": \"Patient.gender\", \"path\": \"Patient.gender\", \"min\": 0, \"max\": \"1\","
+                        + " \"type\": [{\"code\": \"code\"}], \"fixedCode\": \"male\","
+                        + " \"binding\": {\"strength\": \"required\", \"valueSet\": \"http://hl7.org/fhir/ValueSet/administrative-gender\"},"
+                        + " \"constraint\": [{\"key\": \"pat-1\", \"severity\": \"error\", \"human\": \"Always right\"}]}")));
+    }
+
+    private static String render(UMLGenerator generator, String json, String view, boolean fastParse, boolean fromReader) {
+        ConversionOptions options = new ConversionOptions.Builder()
+                .view(view)
+                .fastParse(fastParse)
+                .build();
+        try {
+            UML uml = fromReader
+                    ? generator.generate(new StringReader(json), options)
+                    : generator.generate(json, options);
+            return uml.toString();
+        } catch (Exception e) {
+            // Some examples cannot be converted at all; both paths must then fail the same way
+            return "failed: " + e.getClass().getName();
+        }
+    }
+
+    private static String structureDefinition(String element) {
+        return "{\"resourceType\": \"StructureDefinition\", \"baseDefinition\": \"http://hl7.org/fhir/StructureDefinition/Patient\","
+                + " \"snapshot\": {\"element\": [" + element + "]}}";
+    }
+
+    private static List<Path> examples() throws Exception {
+        try (Stream<Path> files = Files.list(Paths.get("examples"))) {
+            return files.filter(file -> file.toString().endsWith(".json"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.fhir.uml.generation.uml.elements;
+
+import org.fhir.uml.generation.uml.UMLGenerator;
+import org.fhir.uml.generation.uml.utils.ConversionOptions;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures how many bytes {@link Element#writeTo(Appendable, ConversionOptions)} allocates per
+ * rendered element, using the largest example profile.
+ * <p>
+ * The output buffer is reused between rounds, so only the allocations of the rendering itself
+ * are counted. The figure depends on the JVM and its flags, so the budget leaves a wide margin:
+ * rendering allocates about 40 bytes per element on JDK 21, while a single String.format call
+ * allocates several hundred.
+ */
+public class ElementRenderAllocationTest {
+
+    private static final String PROFILE = "examples/explanationofbenefit.profile.json";
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 50;
+    private static final double BYTES_PER_ELEMENT_BUDGET = 256;
+
+    @Test
+    public void staysWithinAllocationBudgetPerRenderedElement() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        ConversionOptions options = new ConversionOptions.Builder()
+                .showConstraints(true)
+                .showBindings(true)
+                .build();
+
+        UML uml;
+        try (Reader reader = Files.newBufferedReader(Paths.get(PROFILE))) {
+            uml = new UMLGenerator().generate(reader, options);
+        }
+
+        List<Element> elements = new ArrayList<>();
+        for (UMLClass umlClass : uml.getClasses()) {
+            elements.addAll(umlClass.getElements());
+        }
+        assertFalse("profile has no elements", elements.isEmpty());
+
+        // Sized up front so growing the buffer is not counted
+        StringBuilder out = new StringBuilder(1 << 20);
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            render(elements, options, out);
+        }
+
+        long threadId = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            render(elements, options, out);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        double bytesPerElement = (double) allocated / ((long) elements.size() * MEASURED_ROUNDS);
+        System.out.printf("Element.writeTo: %d elements x %d rounds, %.1f bytes allocated per element%n",
+                elements.size(), MEASURED_ROUNDS, bytesPerElement);
+
+        assertTrue(String.format("%.1f bytes allocated per element, budget is %.0f", bytesPerElement, BYTES_PER_ELEMENT_BUDGET),
+                bytesPerElement <= BYTES_PER_ELEMENT_BUDGET);
+    }
+
+    private static void render(List<Element> elements, ConversionOptions options, StringBuilder out) throws IOException {
+        for (Element element : elements) {
+            out.setLength(0);
+            element.writeTo(out, options);
+        }
+    }
+}
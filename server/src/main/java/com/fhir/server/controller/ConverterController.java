@@ -1,5 +1,6 @@
 package com.fhir.server.controller;
 
+import com.fhir.server.service.BatchConversionService;
 import com.fhir.server.service.ConverterService;
 import com.fhir.server.util.BodyMediaType;
 import com.fhir.server.util.Config;
@@ -9,34 +10,158 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api")
 public class ConverterController {
     private final ConverterService converterService;
+    private final BatchConversionService batchConversionService;
 
-    public ConverterController(ConverterService converterService) {
+    public ConverterController(ConverterService converterService, BatchConversionService batchConversionService) {
         this.converterService = converterService;
+        this.batchConversionService = batchConversionService;
     }
 
     @PostMapping("/fhir2uml")
     @CrossOrigin(origins = "*")
-    public ResponseEntity<?> convertFhir2Uml(
+    public CompletableFuture<ResponseEntity<?>> convertFhir2Uml(
             @RequestBody String body,
             @RequestHeader HttpHeaders httpHeaders
-    ) throws IOException, InterruptedException {
+    ) {
+        String cdHeader = httpHeaders.getFirst(HttpHeaders.CONTENT_DISPOSITION);
+        ContentDispositionType.ParsedContentDisposition parsedCd = ContentDispositionType.parse(cdHeader);
+        String finalContentDisposition = parsedCd.toHeaderValue();
+
+        Config config = buildConfig(httpHeaders, httpHeaders.getFirst(HttpHeaders.CONTENT_TYPE), finalContentDisposition);
+
+        return converterService.convertFhirToUml(body, config)
+                .<ResponseEntity<?>>thenApply(responseBytes -> ResponseEntity.ok()
+                        .header(HttpHeaders.CONTENT_TYPE, config.getContentType())
+                        .header(HttpHeaders.CONTENT_DISPOSITION, finalContentDisposition)
+                        .body(responseBytes));
+    }
+
+    @PostMapping("/uml2fhir")
+    @CrossOrigin(origins = "*")
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> convertUml2Fhir(
+            @RequestBody String body,
+            @RequestHeader HttpHeaders httpHeaders
+    ) {
+        boolean gzip = acceptsGzip(httpHeaders);
+
+        // Parsing runs on the conversion pool; only the encoding is streamed into the response
+        return converterService.convertUmlToFhir(body)
+                .thenApply(structureDefinition -> {
+                    StreamingResponseBody stream = out -> converterService.writeStructureDefinition(structureDefinition, out, gzip);
+
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                            .header(HttpHeaders.CONTENT_TYPE, "application/fhir+json");
+                    if (gzip) {
+                        response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+                    }
+                    return response.body(stream);
+                });
+    }
+
+    @PostMapping(value = "/fhir2uml/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @CrossOrigin(origins = "*")
+    public ResponseEntity<StreamingResponseBody> convertFhir2UmlBatchFiles(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(value = "format", defaultValue = "png") String format,
+            @RequestHeader HttpHeaders httpHeaders
+    ) throws IOException {
+        List<BatchConversionService.BatchEntry> entries = new ArrayList<>();
+        int index = 0;
+        for (MultipartFile file : files) {
+            String fileName = file.getOriginalFilename();
+            String name = fileName == null || fileName.isBlank()
+                    ? "entry-" + index
+                    : fileName.replaceFirst("\\.[^.]*$", "");
+            entries.add(new BatchConversionService.BatchEntry(name, new String(file.getBytes(), StandardCharsets.UTF_8)));
+            index++;
+        }
+        return batchResponse(entries, httpHeaders, format);
+    }
+
+    @PostMapping("/fhir2uml/batch")
+    @CrossOrigin(origins = "*")
+    public ResponseEntity<StreamingResponseBody> convertFhir2UmlBatchBundle(
+            @RequestBody String body,
+            @RequestParam(value = "format", defaultValue = "png") String format,
+            @RequestHeader HttpHeaders httpHeaders
+    ) throws IOException {
+        return batchResponse(batchConversionService.readBundle(body), httpHeaders, format);
+    }
+
+    private ResponseEntity<StreamingResponseBody> batchResponse(
+            List<BatchConversionService.BatchEntry> entries,
+            HttpHeaders httpHeaders,
+            String format
+    ) {
+        if (entries.isEmpty()) {
+            throw new IllegalArgumentException("No StructureDefinitions found in request");
+        }
+
+        String requestedContentType = switch (format.toLowerCase()) {
+            case "png" -> MediaType.IMAGE_PNG_VALUE;
+            case "svg" -> "image/svg+xml";
+            case "txt" -> MediaType.TEXT_PLAIN_VALUE;
+            default -> throw new IllegalArgumentException("Unsupported format: " + format);
+        };
+        Config config = buildConfig(httpHeaders, requestedContentType, null);
+
+        StreamingResponseBody stream = out -> {
+            try {
+                batchConversionService.convertToZip(entries, config, out);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Batch conversion interrupted");
+            }
+        };
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, "application/zip")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"diagrams.zip\"")
+                .body(stream);
+    }
+
+    private boolean acceptsGzip(HttpHeaders httpHeaders) {
+        for (String value : httpHeaders.getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+            for (String encoding : value.split(",")) {
+                String[] parts = encoding.trim().split(";");
+                if (parts[0].trim().equalsIgnoreCase("gzip") && !isZeroQuality(parts)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isZeroQuality(String[] encodingParts) {
+        for (int i = 1; i < encodingParts.length; i++) {
+            String parameter = encodingParts[i].trim().replace(" ", "");
+            if (parameter.matches("q=0(\\.0*)?")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Config buildConfig(HttpHeaders httpHeaders, String requestedContentType, String contentDisposition) {
         List<MediaType> acceptList = httpHeaders.getAccept();
 
         ViewMode viewMode = ViewMode.fromMediaTypes(acceptList);
         BodyMediaType bodyMediaType = BodyMediaType.fromMediaTypes(acceptList);
 
-        String cdHeader = httpHeaders.getFirst(HttpHeaders.CONTENT_DISPOSITION);
-        ContentDispositionType.ParsedContentDisposition parsedCd = ContentDispositionType.parse(cdHeader);
-
-        String requestedContentType = httpHeaders.getFirst(HttpHeaders.CONTENT_TYPE);
         String imageType = "png";
         String contentType = "text/plain";
         if (requestedContentType != null) {
@@ -49,8 +174,6 @@ public class ConverterController {
             }
         }
 
-        String finalContentDisposition = parsedCd.toHeaderValue();
-
         String hideRemovedObjectsHeader = httpHeaders.getFirst("X-Hide-Removed-Objects");
         boolean hideRemovedObjects = Boolean.parseBoolean(hideRemovedObjectsHeader);
 
@@ -66,13 +189,6 @@ public class ConverterController {
         String hideLegendHeader = httpHeaders.getFirst("X-Hide-Legend");
         boolean hideLegend = Boolean.parseBoolean(hideLegendHeader);
 
-        Config config = new Config(imageType, contentType, viewMode.getViewValue(), "uml", finalContentDisposition, hideRemovedObjects, showConstraints, showBindings, reduceSliceClasses, hideLegend);
-
-        byte[] responseBytes = converterService.convertFhirToUml(body, config);
-
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_TYPE, contentType)
-                .header(HttpHeaders.CONTENT_DISPOSITION, finalContentDisposition)
-                .body(responseBytes);
+        return new Config(imageType, contentType, viewMode.getViewValue(), "uml", contentDisposition, hideRemovedObjects, showConstraints, showBindings, reduceSliceClasses, hideLegend);
     }
 }
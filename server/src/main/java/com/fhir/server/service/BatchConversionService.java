@@ -0,0 +1,198 @@
+package com.fhir.server.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fhir.server.util.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Converts many StructureDefinitions in one request and streams the diagrams back
+ * as a ZIP archive, writing each entry as soon as its conversion finishes.
+ */
+@Service
+public class BatchConversionService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchConversionService.class);
+
+    private static final long BUSY_BACKOFF_MILLIS = 100;
+
+    private final ConverterService converterService;
+    private final ConversionExecutor conversionExecutor;
+    private final ObjectMapper objectMapper;
+
+    public BatchConversionService(ConverterService converterService, ConversionExecutor conversionExecutor, ObjectMapper objectMapper) {
+        this.converterService = converterService;
+        this.conversionExecutor = conversionExecutor;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Splits a FHIR Bundle into its StructureDefinition entries.
+     * A single StructureDefinition is accepted as a batch of one.
+     */
+    public List<BatchEntry> readBundle(String body) throws IOException {
+        JsonNode root = objectMapper.readTree(body);
+        String resourceType = root.path("resourceType").asText();
+
+        List<BatchEntry> entries = new ArrayList<>();
+        if ("StructureDefinition".equals(resourceType)) {
+            entries.add(new BatchEntry(entryName(root, 0), body));
+            return entries;
+        }
+        if (!"Bundle".equals(resourceType)) {
+            throw new IllegalArgumentException("Expected a Bundle of StructureDefinitions, got: " + resourceType);
+        }
+
+        int index = 0;
+        for (JsonNode entry : root.path("entry")) {
+            JsonNode resource = entry.path("resource");
+            if ("StructureDefinition".equals(resource.path("resourceType").asText())) {
+                entries.add(new BatchEntry(entryName(resource, index), objectMapper.writeValueAsString(resource)));
+            }
+            index++;
+        }
+        return entries;
+    }
+
+    /**
+     * Converts all entries on the shared worker pool and writes a ZIP to {@code out}.
+     * At most one conversion per worker is in flight for a batch, so a large batch
+     * cannot fill the queue and push single requests into 429s.
+     * A failed entry is written as {@code <name>.error.txt} and does not abort the batch.
+     */
+    public void convertToZip(List<BatchEntry> entries, Config config, OutputStream out) throws IOException, InterruptedException {
+        String extension = extensionFor(config.getContentType());
+        int window = Math.max(1, conversionExecutor.getPoolSize());
+
+        Deque<BatchEntry> pending = new ArrayDeque<>(entries);
+        BlockingQueue<BatchResult> finished = new LinkedBlockingQueue<>();
+        Set<String> usedNames = new HashSet<>();
+        int outstanding = 0;
+
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            while (!pending.isEmpty() || outstanding > 0) {
+                while (!pending.isEmpty() && outstanding < window) {
+                    BatchEntry entry = pending.peek();
+                    try {
+                        converterService.convertFhirToUml(entry.getBody(), config)
+                                .whenComplete((bytes, error) -> finished.add(new BatchResult(entry, bytes, error)));
+                    } catch (ConverterBusyException e) {
+                        if (outstanding == 0) {
+                            Thread.sleep(BUSY_BACKOFF_MILLIS);
+                            continue;
+                        }
+                        break;
+                    }
+                    pending.poll();
+                    outstanding++;
+                }
+
+                BatchResult result = finished.take();
+                outstanding--;
+                writeEntry(zip, result, extension, usedNames);
+            }
+        }
+    }
+
+    private void writeEntry(ZipOutputStream zip, BatchResult result, String extension, Set<String> usedNames) throws IOException {
+        String name = result.entry.getName();
+        byte[] content;
+        if (result.error == null) {
+            name = uniqueName(name, extension, usedNames);
+            content = result.bytes;
+        } else {
+            Throwable cause = result.error instanceof CompletionException && result.error.getCause() != null
+                    ? result.error.getCause() : result.error;
+            log.warn("Batch entry {} failed: {}", name, cause.getMessage());
+            name = uniqueName(name, ".error.txt", usedNames);
+            content = ("Error: " + cause.getMessage()).getBytes(StandardCharsets.UTF_8);
+        }
+
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content);
+        zip.closeEntry();
+        // Push the finished entry to the client instead of waiting for the whole batch
+        zip.flush();
+    }
+
+    private String uniqueName(String name, String extension, Set<String> usedNames) {
+        String candidate = name + extension;
+        int suffix = 1;
+        while (!usedNames.add(candidate)) {
+            candidate = name + "-" + suffix++ + extension;
+        }
+        return candidate;
+    }
+
+    private String entryName(JsonNode resource, int index) {
+        for (String field : List.of("id", "name")) {
+            String value = resource.path(field).asText("");
+            if (!value.isBlank()) {
+                return sanitize(value);
+            }
+        }
+        return "entry-" + index;
+    }
+
+    static String sanitize(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    private String extensionFor(String contentType) {
+        if (MediaType.IMAGE_PNG_VALUE.equals(contentType)) {
+            return ".png";
+        }
+        if ("image/svg+xml".equals(contentType)) {
+            return ".svg";
+        }
+        return ".txt";
+    }
+
+    public static class BatchEntry {
+        private final String name;
+        private final String body;
+
+        public BatchEntry(String name, String body) {
+            this.name = sanitize(name);
+            this.body = body;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+
+    private static class BatchResult {
+        final BatchEntry entry;
+        final byte[] bytes;
+        final Throwable error;
+
+        BatchResult(BatchEntry entry, byte[] bytes, Throwable error) {
+            this.entry = entry;
+            this.bytes = bytes;
+            this.error = error;
+        }
+    }
+}
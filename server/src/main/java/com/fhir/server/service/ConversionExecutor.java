@@ -0,0 +1,101 @@
+package com.fhir.server.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed-size worker pool with a bounded queue for conversions.
+ * When the queue is full new work is rejected immediately instead of piling up.
+ */
+@Component
+public class ConversionExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversionExecutor.class);
+
+    private final ThreadPoolExecutor executor;
+    private final int retryAfterSeconds;
+
+    public ConversionExecutor(
+            @Value("${converter.executor.workers:0}") int workers,
+            @Value("${converter.executor.queue-capacity:32}") int queueCapacity,
+            @Value("${converter.executor.retry-after-seconds:5}") int retryAfterSeconds,
+            MeterRegistry meterRegistry
+    ) {
+        int poolSize = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new WorkerThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.retryAfterSeconds = retryAfterSeconds;
+
+        Gauge.builder("converter.executor.queue.depth", executor, e -> e.getQueue().size())
+                .description("Conversions waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("converter.executor.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Workers currently running a conversion")
+                .register(meterRegistry);
+
+        log.info("Conversion executor started with {} workers and a queue of {}", poolSize, queueCapacity);
+    }
+
+    /**
+     * Queues the task for a worker.
+     *
+     * @throws ConverterBusyException if all workers are busy and the queue is full
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(task.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Rejecting conversion, queue is full ({} waiting)", executor.getQueue().size());
+            throw new ConverterBusyException(retryAfterSeconds);
+        }
+        return future;
+    }
+
+    public int getPoolSize() {
+        return executor.getCorePoolSize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "converter-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
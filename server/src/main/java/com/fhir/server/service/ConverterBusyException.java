@@ -0,0 +1,14 @@
+package com.fhir.server.service;
+
+public class ConverterBusyException extends RuntimeException {
+    private final int retryAfterSeconds;
+
+    public ConverterBusyException(int retryAfterSeconds) {
+        super("Converter is busy, retry in " + retryAfterSeconds + " seconds");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -1,18 +1,35 @@
 package com.fhir.server.service;
 
 import com.fhir.server.util.Config;
+import com.fhir.server.util.ConversionKey;
+import org.fhir.uml.generation.uml.UMLGenerator;
+import org.fhir.uml.generation.uml.types.ImageFormat;
+import org.fhir.uml.generation.uml.utils.ConversionOptions;
+import org.fhir.uml.generation.uml.utils.FhirContextHolder;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPOutputStream;
 
 @Service
 public class ConverterService {
@@ -25,15 +42,147 @@ public class ConverterService {
     @Value("${plantuml.name.jar}")
     private String PLANTUML_JAR = "plantuml.jar";
 
+    @Value("${converter.isolation.enabled:false}")
+    private boolean isolationEnabled;
+
+    // Splits very large profiles across the common fork-join pool; the diagram is unchanged
+    @Value("${converter.parallel-build:false}")
+    private boolean parallelBuild;
+
+    // Reads only the fields the diagram needs from the JSON; unsupported input still goes through HAPI
+    @Value("${converter.fast-parse:false}")
+    private boolean fastParse;
+
     private static final String INPUT_FILE_BASENAME = "input";
     private static final String OUTPUT_TEXT_BASENAME = "output";
 
-    public byte[] convertFhirToUml(String body, Config config) throws IOException, InterruptedException {
-        log.info("Starting convertFhirToUml. mode={}, view={}, exportAs={}, contentType={}",
-                config.getMode(), config.getView(), config.getContentType(), config.getContentType());
+    // Shares the process-wide FHIR context, which warmUp() builds at startup
+    private final UMLGenerator umlGenerator = new UMLGenerator();
+
+    private final ConversionExecutor conversionExecutor;
+    private final DiagramCache diagramCache;
+
+    // Conversions currently queued or running, so identical concurrent requests share one result
+    private final ConcurrentMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+
+    public ConverterService(ConversionExecutor conversionExecutor, DiagramCache diagramCache) {
+        this.conversionExecutor = conversionExecutor;
+        this.diagramCache = diagramCache;
+    }
+
+    /**
+     * Builds the shared FHIR context and scans its model classes before the first request arrives.
+     */
+    @PostConstruct
+    public void warmUp() {
+        FhirContextHolder.warmUp();
+        log.info("FHIR context warmed up");
+    }
+
+    /**
+     * Returns the cached result for the same body and options, joins an identical
+     * conversion that is already in flight, or queues a new one on the bounded worker pool.
+     *
+     * @throws ConverterBusyException if the pool cannot take more work right now
+     */
+    public CompletableFuture<byte[]> convertFhirToUml(String body, Config config) {
+        String key = ConversionKey.of(body, config);
+        byte[] cached = diagramCache.get(key);
+        if (cached != null) {
+            log.debug("Serving conversion {} from cache", key);
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        CompletableFuture<byte[]> running = inFlight.putIfAbsent(key, result);
+        if (running != null) {
+            log.debug("Joining in-flight conversion {}", key);
+            return running;
+        }
+
+        try {
+            conversionExecutor.submit(() -> {
+                byte[] bytes = render(body, config);
+                diagramCache.put(key, bytes);
+                return bytes;
+            }).whenComplete((bytes, error) -> {
+                inFlight.remove(key, result);
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(bytes);
+                }
+            });
+        } catch (ConverterBusyException e) {
+            inFlight.remove(key, result);
+            result.completeExceptionally(e);
+            throw e;
+        }
+        return result;
+    }
+
+    private byte[] render(String body, Config config) throws Exception {
+        log.info("Starting convertFhirToUml. mode={}, view={}, exportAs={}, contentType={}, isolated={}",
+                config.getMode(), config.getView(), config.getContentType(), config.getContentType(), isolationEnabled);
         log.debug("FHIR input body (truncated): {}", body.length() > 200
                 ? body.substring(0, 200) + "..." : body);
 
+        if (isolationEnabled) {
+            return convertInSeparateProcess(body, config);
+        }
+        return convertInProcess(body, config);
+    }
+
+    /**
+     * Queues the parsing of PlantUML text into a StructureDefinition on the bounded worker pool.
+     * The result is encoded afterwards with {@link #writeStructureDefinition}, so a malformed
+     * diagram fails before any response is written.
+     *
+     * @throws ConverterBusyException if the pool cannot take more work right now
+     */
+    public CompletableFuture<UMLGenerator.ParsedStructureDefinition> convertUmlToFhir(String uml) {
+        return conversionExecutor.submit(() -> {
+            log.info("Starting convertUmlToFhir");
+            return umlGenerator.parseStructureDefinition(new StringReader(uml));
+        });
+    }
+
+    /**
+     * Writes the StructureDefinition as JSON to {@code out} while it is encoded,
+     * gzip-compressed when {@code gzip} is set. The stream is not closed.
+     */
+    public void writeStructureDefinition(UMLGenerator.ParsedStructureDefinition structureDefinition,
+                                         OutputStream out, boolean gzip) throws IOException {
+        if (gzip) {
+            GZIPOutputStream compressed = new GZIPOutputStream(out);
+            structureDefinition.writeTo(compressed, true);
+            compressed.finish();
+        } else {
+            structureDefinition.writeTo(out, true);
+        }
+        log.info("Embedded converter finished StructureDefinition. gzip={}", gzip);
+    }
+
+    private byte[] convertInProcess(String body, Config config) throws Exception {
+        ConversionOptions options = toConversionOptions(config);
+
+        if (Objects.equals(config.getContentType(), MediaType.TEXT_PLAIN_VALUE)) {
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            try (Writer writer = new OutputStreamWriter(text, StandardCharsets.UTF_8)) {
+                umlGenerator.generatePlantUml(body, options, writer);
+            }
+            log.info("Embedded converter finished");
+            return text.toByteArray();
+        }
+
+        boolean isPng = Objects.equals(config.getContentType(), MediaType.IMAGE_PNG_VALUE);
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+        umlGenerator.generateImage(body, options, isPng ? ImageFormat.PNG : ImageFormat.SVG, image);
+        log.info("Embedded converter rendered {} image ({} bytes)", isPng ? "PNG" : "SVG", image.size());
+        return image.toByteArray();
+    }
+
+    private byte[] convertInSeparateProcess(String body, Config config) throws IOException, InterruptedException {
         Path inputFile = Files.createTempFile(INPUT_FILE_BASENAME, ".json");
         Path outputTxt = Files.createTempFile(OUTPUT_TEXT_BASENAME, ".txt");
         Path outputImage = Files.createTempFile(OUTPUT_TEXT_BASENAME, ".png");
@@ -47,10 +196,9 @@ public class ConverterService {
 
         if (converterResult.exitCode != 0) {
             log.error("Main converter jar failed. stderr:\n{}", converterResult.stderr);
-            return buildFailedMessage(converterResult.exitCode, converterResult.stderr);
+            throw buildFailure(converterResult.exitCode, converterResult.stderr);
         }
         log.debug("Main converter stdout:\n{}", converterResult.stdout);
-        System.out.println(converterResult.stdout);
 
         byte[] finalBytes;
         if (Objects.equals(config.getContentType(), MediaType.TEXT_PLAIN_VALUE)) {
@@ -59,63 +207,89 @@ public class ConverterService {
             finalBytes = Files.readString(outputTxt, StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_8);
         } else {
             // 2) Run PlantUML
-            log.info("Calling PlantUML for image output...");
-            ProcessResult plantUmlResult = runPlantUml(outputTxt, config);
-            log.info("PlantUML finished with exitCode={}", plantUmlResult.exitCode);
-
-            if (plantUmlResult.exitCode != 0) {
-                log.error("PlantUML failed. stderr:\n{}", plantUmlResult.stderr);
-                return buildFailedMessage(plantUmlResult.exitCode, plantUmlResult.stderr);
-            }
-            log.debug("PlantUML stdout:\n{}", plantUmlResult.stdout);
-
-            boolean isPng = Objects.equals(config.getContentType(), MediaType.IMAGE_PNG_VALUE);
-            String extension = isPng ? ".png" : ".svg";
-
-            String inputName = outputTxt.getFileName().toString();   // e.g. "input1234.json"
-            String baseNoExt = inputName.replaceAll("\\.\\w+$", ""); // "input1234"
-            Path finalOutputPath = outputTxt.getParent().resolve(baseNoExt + extension);
-
-            log.info("Reading final {} image from: {}", isPng ? "PNG" : "SVG", finalOutputPath);
-            finalBytes = Files.readAllBytes(finalOutputPath);
-
-            // Optionally remove the generated image
-            Files.deleteIfExists(finalOutputPath);
-            log.debug("Deleted plantUML output file: {}", finalOutputPath);
+            finalBytes = renderWithPlantUml(outputTxt, config);
         }
 
         // Cleanup
         Files.deleteIfExists(inputFile);
         Files.deleteIfExists(outputTxt);
-        log.debug("Cleaned up temp files: {}, {}", inputFile, outputTxt);
+        Files.deleteIfExists(outputImage);
+        log.debug("Cleaned up temp files: {}, {}, {}", inputFile, outputTxt, outputImage);
 
         return finalBytes;
     }
 
-    public String convertUmlToFhir(String uml) {
-        // not implemented
-        return null;
+    private byte[] renderWithPlantUml(Path outputTxt, Config config) throws IOException, InterruptedException {
+        log.info("Calling PlantUML for image output...");
+        ProcessResult plantUmlResult = runPlantUml(outputTxt, config);
+        log.info("PlantUML finished with exitCode={}", plantUmlResult.exitCode);
+
+        if (plantUmlResult.exitCode != 0) {
+            log.error("PlantUML failed. stderr:\n{}", plantUmlResult.stderr);
+            throw buildFailure(plantUmlResult.exitCode, plantUmlResult.stderr);
+        }
+        log.debug("PlantUML stdout:\n{}", plantUmlResult.stdout);
+
+        boolean isPng = Objects.equals(config.getContentType(), MediaType.IMAGE_PNG_VALUE);
+        String extension = isPng ? ".png" : ".svg";
+
+        String inputName = outputTxt.getFileName().toString();   // e.g. "input1234.json"
+        String baseNoExt = inputName.replaceAll("\\.\\w+$", ""); // "input1234"
+        Path finalOutputPath = outputTxt.getParent().resolve(baseNoExt + extension);
+
+        log.info("Reading final {} image from: {}", isPng ? "PNG" : "SVG", finalOutputPath);
+        byte[] finalBytes = Files.readAllBytes(finalOutputPath);
+
+        // Optionally remove the generated image
+        Files.deleteIfExists(finalOutputPath);
+        log.debug("Deleted plantUML output file: {}", finalOutputPath);
+
+        return finalBytes;
     }
 
-    private ProcessResult runConverterJar(Path inputFile, Path outputTxt, Path outputImg, Config config)
-            throws IOException, InterruptedException {
+    private ConversionOptions toConversionOptions(Config config) {
+        return new ConversionOptions.Builder()
+                .view(config.getView())
+                .hideRemovedObjects(config.getHideRemovedObjects())
+                .showConstraints(config.getShowConstraints())
+                .showBindings(config.getShowBindings())
+                .reduceSliceClasses(config.getReduceSliceClasses())
+                .hideLegend(config.getHideLegend())
+                .parallelBuild(parallelBuild)
+                .fastParse(fastParse)
+                .build();
+    }
 
-        ProcessBuilder pb = new ProcessBuilder(
-                "java", "-jar", converterJarName,
+    /**
+     * Options passed to the forked converter command line.
+     */
+    private List<String> converterArguments(Config config) {
+        return List.of(
                 "--mode", config.getMode(),
-                "--input", inputFile.toAbsolutePath().toString(),
-                "--output", outputImg.toAbsolutePath().toString(),
-                "--txt", outputTxt.toAbsolutePath().toString(),
                 "--view", config.getView(),
                 "--hide_removed_objects", String.valueOf(config.getHideRemovedObjects()),
                 "--show_constraints", String.valueOf(config.getShowConstraints()),
                 "--show_bindings", String.valueOf(config.getShowBindings()),
                 "--reduce_slice_classes", String.valueOf(config.getReduceSliceClasses()),
-                "--hide_legend", String.valueOf(config.getHideLegend())
+                "--hide_legend", String.valueOf(config.getHideLegend()),
+                "--parallel_build", String.valueOf(parallelBuild),
+                "--fast_parse", String.valueOf(fastParse)
         );
+    }
+
+    private ProcessResult runConverterJar(Path inputFile, Path outputTxt, Path outputImg, Config config)
+            throws IOException, InterruptedException {
+
+        List<String> command = new ArrayList<>(List.of(
+                "java", "-jar", converterJarName,
+                "--input", inputFile.toAbsolutePath().toString(),
+                "--output", outputImg.toAbsolutePath().toString(),
+                "--txt", outputTxt.toAbsolutePath().toString()
+        ));
+        command.addAll(converterArguments(config));
+        ProcessBuilder pb = new ProcessBuilder(command);
 
         log.debug("Running main converter jar with command: {}", pb.command());
-        System.out.println(pb.command());
         return runProcess(pb);
     }
 
@@ -148,10 +322,10 @@ public class ConverterService {
         }
     }
 
-    private byte[] buildFailedMessage(int exitCode, String stderr) {
+    private IOException buildFailure(int exitCode, String stderr) {
         String msg = "FAILED. exitCode=" + exitCode + "\n" + stderr;
-        log.warn("Returning FAILED message: {}", msg);
-        return msg.getBytes(StandardCharsets.UTF_8);
+        log.warn("Conversion process failed: {}", msg);
+        return new IOException(msg);
     }
 
     private static class ProcessResult {
@@ -0,0 +1,90 @@
+package com.fhir.server.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of conversion results keyed by {@link com.fhir.server.util.ConversionKey}.
+ * <p>
+ * The bytes live in direct buffers outside the Java heap, so large images do not add
+ * to GC pressure. Eviction is by total size rather than entry count.
+ */
+@Component
+public class DiagramCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, ByteBuffer> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public DiagramCache(@Value("${converter.cache.max-bytes:67108864}") long maxBytes, MeterRegistry meterRegistry) {
+        this.maxBytes = maxBytes;
+        this.hits = Counter.builder("converter.cache.hits").register(meterRegistry);
+        this.misses = Counter.builder("converter.cache.misses").register(meterRegistry);
+        Gauge.builder("converter.cache.size.bytes", this, DiagramCache::sizeInBytes)
+                .description("Bytes held by cached diagrams")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns a copy of the cached bytes, or {@code null} when the key is unknown.
+     */
+    public byte[] get(String key) {
+        ByteBuffer buffer;
+        synchronized (this) {
+            buffer = entries.get(key);
+        }
+        if (buffer == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+
+        // Direct buffers are never mutated after put, so a private view can be read outside the lock
+        ByteBuffer view = buffer.duplicate();
+        byte[] bytes = new byte[view.remaining()];
+        view.get(bytes);
+        return bytes;
+    }
+
+    public void put(String key, byte[] bytes) {
+        if (bytes.length > maxBytes) {
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+
+        synchronized (this) {
+            ByteBuffer previous = entries.put(key, buffer);
+            if (previous != null) {
+                currentBytes -= previous.capacity();
+            }
+            currentBytes += buffer.capacity();
+            evictIfNeeded();
+        }
+    }
+
+    public synchronized long sizeInBytes() {
+        return currentBytes;
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, ByteBuffer>> iterator = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, ByteBuffer> eldest = iterator.next();
+            currentBytes -= eldest.getValue().capacity();
+            iterator.remove();
+        }
+    }
+}
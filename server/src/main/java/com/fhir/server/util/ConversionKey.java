@@ -0,0 +1,43 @@
+package com.fhir.server.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Content address of a conversion: a SHA-256 over the request body and every option
+ * that influences the produced bytes. The attachment file name only affects response
+ * headers, so it is left out.
+ */
+public final class ConversionKey {
+
+    private ConversionKey() {
+    }
+
+    public static String of(String body, Config config) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        String options = String.join("\u0000",
+                config.getMode(),
+                config.getView(),
+                config.getImageType(),
+                config.getContentType(),
+                String.valueOf(config.getHideRemovedObjects()),
+                String.valueOf(config.getShowConstraints()),
+                String.valueOf(config.getShowBindings()),
+                String.valueOf(config.getReduceSliceClasses()),
+                String.valueOf(config.getHideLegend())
+        );
+
+        digest.update(options.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(body.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}